@@ -0,0 +1,62 @@
+import java.util.Random;
+
+/**
+ * Walker/Vose alias table: draws an index with probability proportional to its
+ * weight in O(1).
+ */
+public class AliasTable {
+    private final double[] probability;
+    private final int[] alias;
+
+    public AliasTable(double[] weights) {
+        int size = weights.length;
+        this.probability = new double[size];
+        this.alias = new int[size];
+
+        double totalWeight = 0.0;
+        for (double weight : weights)
+            totalWeight += weight;
+
+        double[] scaled = new double[size];
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int smallCount = 0;
+        int largeCount = 0;
+
+        for (int i = 0; i < size; i++) {
+            scaled[i] = weights[i] * size / totalWeight;
+            if (scaled[i] < 1.0)
+                small[smallCount++] = i;
+            else
+                large[largeCount++] = i;
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+
+            probability[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0)
+                small[smallCount++] = more;
+            else
+                large[largeCount++] = more;
+        }
+
+        while (largeCount > 0)
+            probability[large[--largeCount]] = 1.0;
+        while (smallCount > 0)
+            probability[small[--smallCount]] = 1.0;
+    }
+
+    public int sample(Random random) {
+        int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+    public int size() {
+        return probability.length;
+    }
+}
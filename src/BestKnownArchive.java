@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import data.Instance;
+import data.Solution;
+import data.SolutionWriter;
+
+/**
+ * Best solution known for each instance across runs, kept as a .sol file per
+ * instance set and instance under ARCHIVE_DIRECTORY.
+ *
+ * Updates hold a lock file while they compare against the archived solution,
+ * and replace it through an atomic move, so concurrent runs never leave a
+ * partial or worse file behind. Archived solutions are re-costed with the
+ * instance's current cost function when loaded.
+ */
+public class BestKnownArchive {
+    private final String ARCHIVE_DIRECTORY = "./solution/best_known/";
+    private final double COST_TOLERANCE = 0.001;
+
+    private final Instance instance;
+    private final Path path;
+    private final Path lockPath;
+
+    public BestKnownArchive(Instance instance) {
+        this.instance = instance;
+        Path directory = Paths.get(ARCHIVE_DIRECTORY, instance.instanceSet());
+        this.path = directory.resolve(instance.instanceName() + ".sol");
+        this.lockPath = directory.resolve(instance.instanceName() + ".lock");
+    }
+
+    /**
+     * Returns the archived solution, or null when there is none or it is not
+     * a valid solution of the instance.
+     */
+    public Solution load() {
+        if (!Files.exists(path))
+            return null;
+        try {
+            return Solution.readSolutionFile(path, instance);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Archives the solution if it is cheaper than the archived one. Returns
+     * whether it was archived.
+     */
+    public boolean update(Solution solution, double processTime) {
+        try {
+            Files.createDirectories(path.getParent());
+            try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE)) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    Solution archived = load();
+                    if (archived != null && solution.getTotalCost() >= archived.getTotalCost() - COST_TOLERANCE)
+                        return false;
+
+                    Path temporaryPath = Paths.get(path + ".tmp");
+                    solution.exportSolution(instance.instanceName(), temporaryPath.toString(),
+                            solution.getTotalCost(), processTime, 0);
+                    SolutionWriter.shared().flush();
+                    Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    return true;
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
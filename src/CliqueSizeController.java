@@ -0,0 +1,187 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Locale;
+
+import data.Solution;
+
+/**
+ * Picks the clique size of the next VDNS subproblem from the creation and
+ * solving times observed so far.
+ *
+ * Two power laws are fitted with exponential forgetting: subproblem arcs as a
+ * function of clique size and total model time as a function of arcs.
+ * Subproblems that stop above the gap tolerance are recorded as censored, so
+ * their time counts as at least the time limit inflated by the gap. The
+ * controller then selects the largest clique whose predicted time fits in
+ * TARGET_TIME_FRACTION of the subproblem time limit.
+ */
+public class CliqueSizeController {
+    private final double TARGET_TIME_FRACTION = 0.5;
+    private final double GAP_TOLERANCE = 0.01;
+    private final double FORGETTING_FACTOR = 0.9;
+    private final int MIN_OBSERVATIONS = 3;
+    private final int MAX_GROWTH = 5;
+
+    private final int minCliqueSize;
+    private final int maxCliqueSize;
+    private final double subproblemTimeLimit;
+
+    private final PowerLawFit arcsBySize = new PowerLawFit(2.0);
+    private final PowerLawFit timeByArcs = new PowerLawFit(1.5);
+
+    private int cliqueSize;
+    private int observations = 0;
+    private String lastDecision = "initial";
+
+    public CliqueSizeController(int minCliqueSize, int maxCliqueSize, double subproblemTimeLimit) {
+        this.minCliqueSize = minCliqueSize;
+        this.maxCliqueSize = maxCliqueSize;
+        this.subproblemTimeLimit = subproblemTimeLimit;
+        this.cliqueSize = minCliqueSize;
+    }
+
+    public int cliqueSize() {
+        return cliqueSize;
+    }
+
+    public String lastDecision() {
+        return lastDecision;
+    }
+
+    /**
+     * Records the outcome of a subproblem and returns the clique size for the
+     * next one. A null solution means the solver returned no solution at all,
+     * in which case the measured wall time is used.
+     */
+    public int update(int usedCliqueSize, int arcCount, Solution solution, double wallTime) {
+        boolean solved = solution != null && solution.gap <= GAP_TOLERANCE;
+        double time = solution != null ? solution.creationTime + solution.solvingTime : wallTime;
+        if (!solved) {
+            double gap = solution != null ? solution.gap : 1.0;
+            time = Math.max(time, subproblemTimeLimit) * (1.0 + gap);
+        }
+
+        arcsBySize.add(usedCliqueSize, Math.max(arcCount, 1));
+        timeByArcs.add(Math.max(arcCount, 1), Math.max(time, 1E-3));
+        observations++;
+
+        if (observations < MIN_OBSERVATIONS) {
+            cliqueSize = solved
+                    ? Math.min(usedCliqueSize + 1, maxCliqueSize)
+                    : Math.max(usedCliqueSize - 1, minCliqueSize);
+            lastDecision = String.format(Locale.ROOT, "warmup %s", solved ? "solved" : "censored");
+            return cliqueSize;
+        }
+
+        double targetTime = TARGET_TIME_FRACTION * subproblemTimeLimit;
+        int upperSize = Math.min(maxCliqueSize, usedCliqueSize + MAX_GROWTH);
+
+        int chosen = minCliqueSize;
+        double predictedTime = predictTime(minCliqueSize);
+        for (int size = upperSize; size > minCliqueSize; size--) {
+            double predicted = predictTime(size);
+            if (predicted <= targetTime) {
+                chosen = size;
+                predictedTime = predicted;
+                break;
+            }
+        }
+
+        // A censored subproblem must never lead to a larger one
+        if (!solved && chosen >= usedCliqueSize) {
+            chosen = Math.max(usedCliqueSize - 1, minCliqueSize);
+            predictedTime = predictTime(chosen);
+        }
+
+        cliqueSize = chosen;
+        lastDecision = String.format(Locale.ROOT, "model %s predicted=%.2fs target=%.2fs",
+                solved ? "solved" : "censored", predictedTime, targetTime);
+        return cliqueSize;
+    }
+
+    /**
+     * Moves on past a subproblem that was skipped without solving it, and
+     * returns the next clique size. Nothing was measured, so the fits are
+     * left unchanged.
+     */
+    public int skip(int usedCliqueSize) {
+        cliqueSize = Math.min(usedCliqueSize + 1, maxCliqueSize);
+        lastDecision = "skipped";
+        return cliqueSize;
+    }
+
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeInt(cliqueSize);
+        output.writeInt(observations);
+        output.writeUTF(lastDecision);
+        arcsBySize.writeTo(output);
+        timeByArcs.writeTo(output);
+    }
+
+    public void readFrom(DataInput input) throws IOException {
+        cliqueSize = input.readInt();
+        observations = input.readInt();
+        lastDecision = input.readUTF();
+        arcsBySize.readFrom(input);
+        timeByArcs.readFrom(input);
+    }
+
+    private double predictTime(int size) {
+        return timeByArcs.predict(arcsBySize.predict(size));
+    }
+
+    /**
+     * Weighted least squares fit of log(y) = a + b log(x), older observations
+     * decaying by FORGETTING_FACTOR. Falls back to a default slope through the
+     * weighted mean while x has no spread.
+     */
+    private class PowerLawFit {
+        private final double defaultSlope;
+
+        private double sumW, sumX, sumY, sumXX, sumXY;
+
+        PowerLawFit(double defaultSlope) {
+            this.defaultSlope = defaultSlope;
+        }
+
+        void add(double x, double y) {
+            double logX = Math.log(x);
+            double logY = Math.log(y);
+
+            sumW = sumW * FORGETTING_FACTOR + 1;
+            sumX = sumX * FORGETTING_FACTOR + logX;
+            sumY = sumY * FORGETTING_FACTOR + logY;
+            sumXX = sumXX * FORGETTING_FACTOR + logX * logX;
+            sumXY = sumXY * FORGETTING_FACTOR + logX * logY;
+        }
+
+        double predict(double x) {
+            double meanX = sumX / sumW;
+            double meanY = sumY / sumW;
+            double varianceX = sumXX / sumW - meanX * meanX;
+
+            double slope = defaultSlope;
+            if (varianceX > 1E-6)
+                slope = Math.max((sumXY / sumW - meanX * meanY) / varianceX, 0.0);
+
+            return Math.exp(meanY + slope * (Math.log(x) - meanX));
+        }
+
+        void writeTo(DataOutput output) throws IOException {
+            output.writeDouble(sumW);
+            output.writeDouble(sumX);
+            output.writeDouble(sumY);
+            output.writeDouble(sumXX);
+            output.writeDouble(sumXY);
+        }
+
+        void readFrom(DataInput input) throws IOException {
+            sumW = input.readDouble();
+            sumX = input.readDouble();
+            sumY = input.readDouble();
+            sumXX = input.readDouble();
+            sumXY = input.readDouble();
+        }
+    }
+}
@@ -3,17 +3,14 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
 
 import data.Instance;
-import data.Link;
 import data.Solution;
+import data.SolutionWriter;
 import ilog.concert.IloException;
 import model.ModelFactory;
-import model.cplex.CplexBaseModel;
+import model.SolutionPool;
+import model.SubproblemModel;
 import model.cplex.vrpspd.GVRPSPDModel;
 
 public class Cplex {
@@ -48,19 +45,17 @@ public class Cplex {
                     bestSolution.getTotalCost(),
                     processTime, 0);
 
-            Set<Link> links = new HashSet<>(instance.linkManager().getAll());
+            int[] arcIds = instance.linkManager().getAllArcIds();
 
-            List<Solution> solutionsFromCplex = new LinkedList<>();
+            Solution firstSolution = bestSolution;
 
-            try (CplexBaseModel model = modelFactory.create(instance, links, timeLimit)) {
-                solutionsFromCplex.addAll(model.solve());
+            try (SubproblemModel model = modelFactory.create(instance, arcIds, timeLimit)) {
+                SolutionPool pool = model.solve();
+                if (!pool.isEmpty())
+                    firstSolution = pool.first();
                 processTime = (System.currentTimeMillis() - startTime) / 1000;
-                if (solutionsFromCplex.isEmpty())
-                    solutionsFromCplex.add(bestSolution);
             }
 
-            Solution firstSolution = solutionsFromCplex.getFirst();
-
             firstSolution.exportSolution(instance.instanceName(),
                     String.format("%s/%s-%06d.sol", fileDirectory, filename, iterCounter),
                     bestSolution.getTotalCost(),
@@ -82,5 +77,6 @@ public class Cplex {
             printer.printf("%-30s%8d%n", "IMPROVEMENTS", imprCounter);
             printer.close();
         }
+        SolutionWriter.shared().flush();
     }
 }
@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import data.Instance;
+import data.Node;
+import data.Route;
+import data.Solution;
+
+/**
+ * Optimizes an instance too large for a single search space region by
+ * region.
+ *
+ * The routes of the incumbent are ordered around the depot, by the angle of
+ * their centroid, or for distance matrix instances by chaining each route to
+ * the nearest one left, and cut into regions of about REGION_SIZE clients.
+ * Each region becomes a sub-instance holding the depot and its clients, and
+ * is improved independently and in parallel by LocalSearch and
+ * RuinAndRecreate from its own routes. The region results are stitched back
+ * into one solution, which is never worse than the incumbent. Every round
+ * starts the ordering at a random angle or route, so region borders move.
+ */
+public class Decomposition {
+    private final int REGION_SIZE = 200;
+    private final int RUIN_AND_RECREATE_ITERATIONS = Integer.MAX_VALUE;
+    private final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final Instance instance;
+    private final double costPerDistance;
+    private final double costPerRoute;
+    private final boolean useAngles;
+
+    public Decomposition(Instance instance, double costPerDistance, double costPerRoute) {
+        this.instance = instance;
+        this.costPerDistance = costPerDistance;
+        this.costPerRoute = costPerRoute;
+        Node depot = instance.depotNode();
+        this.useAngles = instance.allNodes().stream().anyMatch(node -> node.x() != depot.x() || node.y() != depot.y());
+    }
+
+    /**
+     * One round over a new partition of the incumbent's routes, sharing about
+     * timeLimit seconds of wall time among the regions.
+     */
+    public Solution run(Solution incumbent, double timeLimit, Random random) {
+        double startTime = System.currentTimeMillis();
+        List<List<Route>> regions = partition(incumbent, random);
+        double regionTimeLimit = timeLimit * Math.min(NUMBER_OF_THREADS, regions.size()) / regions.size();
+
+        List<Route> routes = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.min(NUMBER_OF_THREADS, regions.size()))) {
+            List<Future<List<Route>>> results = new ArrayList<>();
+            for (int r = 0; r < regions.size(); r++) {
+                List<Route> region = regions.get(r);
+                String regionName = instance.instanceName() + "-region" + r;
+                long seed = random.nextLong();
+                results.add(executor.submit(() -> optimizeRegion(regionName, region, regionTimeLimit, seed)));
+            }
+            for (int r = 0; r < regions.size(); r++) {
+                try {
+                    routes.addAll(results.get(r).get());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    routes.addAll(regions.get(r));
+                }
+            }
+        }
+
+        return new Solution(routes, "Decomposition", 0.0, (System.currentTimeMillis() - startTime) / 1000);
+    }
+
+    private List<List<Route>> partition(Solution incumbent, Random random) {
+        List<Route> routes = new ArrayList<>();
+        for (Route route : incumbent.routes) {
+            if (!route.nodes.isEmpty())
+                routes.add(route);
+        }
+        List<Route> ordered = useAngles ? orderByAngle(routes, random) : orderByChaining(routes, random);
+
+        List<List<Route>> regions = new ArrayList<>();
+        List<Route> region = new ArrayList<>();
+        int regionClients = 0;
+        for (Route route : ordered) {
+            region.add(route);
+            regionClients += route.nodes.size();
+            if (regionClients >= REGION_SIZE) {
+                regions.add(region);
+                region = new ArrayList<>();
+                regionClients = 0;
+            }
+        }
+        if (!region.isEmpty()) {
+            // A small remainder joins the last region instead of forming its own
+            if (!regions.isEmpty() && regionClients < REGION_SIZE / 2)
+                regions.getLast().addAll(region);
+            else
+                regions.add(region);
+        }
+        return regions;
+    }
+
+    /**
+     * Routes sorted by the angle of their centroid around the depot, starting
+     * from a random angle.
+     */
+    private List<Route> orderByAngle(List<Route> routes, Random random) {
+        Node depot = instance.depotNode();
+        double startAngle = random.nextDouble() * 2 * Math.PI;
+        List<Route> ordered = new ArrayList<>(routes);
+        ordered.sort(Comparator.comparingDouble(route -> {
+            double x = route.nodes.stream().mapToDouble(Node::x).average().orElse(depot.x());
+            double y = route.nodes.stream().mapToDouble(Node::y).average().orElse(depot.y());
+            double angle = Math.atan2(y - depot.y(), x - depot.x()) - startAngle;
+            return angle < 0 ? angle + 2 * Math.PI : angle;
+        }));
+        return ordered;
+    }
+
+    /**
+     * Routes chained from a random one, each followed by the nearest route
+     * left; routes are as near as their closest pair of clients.
+     */
+    private List<Route> orderByChaining(List<Route> routes, Random random) {
+        List<Route> left = new ArrayList<>(routes);
+        List<Route> ordered = new ArrayList<>(routes.size());
+        Route current = left.remove(random.nextInt(left.size()));
+        ordered.add(current);
+        while (!left.isEmpty()) {
+            int nearest = 0;
+            double nearestDistance = Double.MAX_VALUE;
+            for (int r = 0; r < left.size(); r++) {
+                double distance = routeDistance(current, left.get(r));
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = r;
+                }
+            }
+            current = left.remove(nearest);
+            ordered.add(current);
+        }
+        return ordered;
+    }
+
+    private double routeDistance(Route first, Route second) {
+        double distance = Double.MAX_VALUE;
+        for (Node a : first.nodes) {
+            for (Node b : second.nodes)
+                distance = Math.min(distance, instance.linkManager().get(a.id(), b.id()).distance());
+        }
+        return distance;
+    }
+
+    /**
+     * Improves the routes of one region as a sub-instance and maps the result
+     * back to the nodes of the instance.
+     */
+    private List<Route> optimizeRegion(String regionName, List<Route> region, double timeLimit, long seed) {
+        double deadline = System.currentTimeMillis() + timeLimit * 1000;
+
+        List<Node> clients = new ArrayList<>();
+        for (Route route : region)
+            clients.addAll(route.nodes);
+        Instance subInstance = new Instance(instance, regionName, clients);
+
+        // Clients are renumbered from 1 in the order of the region's routes
+        List<Route> subRoutes = new ArrayList<>();
+        int nextId = 1;
+        for (Route route : region) {
+            List<Node> nodes = new ArrayList<>();
+            for (int n = 0; n < route.nodes.size(); n++)
+                nodes.add(subInstance.allNodes().get(nextId++));
+            subRoutes.add(new Route(nodes, subInstance));
+        }
+        Solution start = new Solution(subRoutes, "Region", 0.0, 0.0);
+
+        Solution solution = new LocalSearch(subInstance).run(start);
+        double timeLeft = (deadline - System.currentTimeMillis()) / 1000;
+        if (timeLeft > 0) {
+            Solution improved = new RuinAndRecreate(subInstance, costPerDistance, costPerRoute, null)
+                    .run(solution, RUIN_AND_RECREATE_ITERATIONS, timeLeft, new Random(seed));
+            if (improved != null)
+                solution = improved;
+        }
+        if (solution.getTotalCost() >= start.getTotalCost())
+            return region;
+
+        List<Route> routes = new ArrayList<>();
+        for (Route subRoute : solution.routes) {
+            if (subRoute.nodes.isEmpty())
+                continue;
+            List<Node> nodes = new ArrayList<>();
+            for (Node node : subRoute.nodes)
+                nodes.add(clients.get(node.id() - 1));
+            routes.add(new Route(nodes, instance));
+        }
+        return routes;
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+import data.Instance;
+import data.Route;
+import data.Solution;
+
+/**
+ * Bounded pool of elite solutions ordered by total cost.
+ *
+ * Each member keeps its cost and its successor/predecessor arrays, so
+ * comparisons never re-sum route costs. The successors of the clients
+ * determine every arc, so they key the duplicate check.
+ * A candidate that is within MIN_DISTANCE_FRACTION broken pairs of a member
+ * can only replace that member; otherwise it replaces the worst member when
+ * the pool is full. Solutions with equal cost but different arcs coexist.
+ */
+public class ElitePool implements Iterable<Solution> {
+    private final double COST_TOLERANCE = 0.001;
+    private final double MIN_DISTANCE_FRACTION = 0.05;
+
+    private final Instance instance;
+    private final int capacity;
+    private final int numberOfNodes;
+    private final int minDistance;
+
+    private final TreeSet<Entry> entries = new TreeSet<>(
+            Comparator.comparingDouble((Entry entry) -> entry.cost).thenComparingLong(entry -> entry.sequence));
+    private final Map<Arcs, Entry> members = new HashMap<>();
+    private long sequence = 0;
+
+    private record Arcs(int[] successors) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Arcs arcs && Arrays.equals(successors, arcs.successors);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(successors);
+        }
+    }
+
+    private static class Entry {
+        final Solution solution;
+        final double cost;
+        final Arcs arcs;
+        final int[] successors;
+        final int[] predecessors;
+        final long sequence;
+
+        Entry(Solution solution, int numberOfNodes, long sequence) {
+            this.solution = solution;
+            this.cost = solution.getTotalCost();
+            this.successors = solution.getSuccessors(numberOfNodes);
+            this.predecessors = new int[numberOfNodes];
+            for (Route route : solution.routes) {
+                for (int n = 0; n < route.nodes.size(); n++)
+                    predecessors[route.nodes.get(n).id()] = n > 0 ? route.nodes.get(n - 1).id() : 0;
+            }
+            this.arcs = new Arcs(successors);
+            this.sequence = sequence;
+        }
+    }
+
+    public ElitePool(Instance instance, int capacity) {
+        this.instance = instance;
+        this.capacity = capacity;
+        this.numberOfNodes = instance.numberOfNodes();
+        this.minDistance = (int) Math.ceil(MIN_DISTANCE_FRACTION * (numberOfNodes - 1));
+    }
+
+    public boolean add(Solution solution) {
+        Entry candidate = new Entry(solution, numberOfNodes, sequence++);
+        if (isDuplicate(candidate))
+            return false;
+
+        Entry closest = null;
+        int closestDistance = Integer.MAX_VALUE;
+        for (Entry entry : entries) {
+            int distance = brokenPairs(candidate, entry);
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closest = entry;
+            }
+        }
+
+        if (closest != null && closestDistance < minDistance) {
+            if (candidate.cost >= closest.cost - COST_TOLERANCE)
+                return false;
+            remove(closest);
+        } else if (entries.size() >= capacity) {
+            if (candidate.cost >= entries.last().cost - COST_TOLERANCE)
+                return false;
+            remove(entries.last());
+        }
+
+        entries.add(candidate);
+        members.put(candidate.arcs, candidate);
+        return true;
+    }
+
+    public boolean contains(Solution solution) {
+        return isDuplicate(new Entry(solution, numberOfNodes, -1));
+    }
+
+    public Solution best() {
+        return entries.isEmpty() ? null : entries.first().solution;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        members.clear();
+    }
+
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeInt(entries.size());
+        for (Entry entry : entries)
+            entry.solution.writeTo(output);
+    }
+
+    public void readFrom(DataInput input) throws IOException {
+        clear();
+        int size = input.readInt();
+        for (int i = 0; i < size; i++)
+            add(Solution.readFrom(input, instance));
+    }
+
+    @Override
+    public Iterator<Solution> iterator() {
+        Iterator<Entry> iterator = entries.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Solution next() {
+                return iterator.next().solution;
+            }
+        };
+    }
+
+    private boolean isDuplicate(Entry candidate) {
+        return members.containsKey(candidate.arcs);
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry);
+        members.remove(entry.arcs);
+    }
+
+    /**
+     * Number of customer adjacencies of a that are absent from b, ignoring
+     * direction.
+     */
+    private int brokenPairs(Entry a, Entry b) {
+        int broken = 0;
+        for (int i = 1; i < numberOfNodes; i++) {
+            int next = a.successors[i];
+            if (next != b.successors[i] && next != b.predecessors[i])
+                broken++;
+        }
+        return broken;
+    }
+}
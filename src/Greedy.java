@@ -6,23 +6,33 @@ import data.Instance;
 import data.Node;
 import data.Route;
 import data.Solution;
+import events.GreedyEvent;
 
 public class Greedy {
     private final double NEAREST_NEIGHBOR_PROBABILITY = 0.99;
     private final Instance instance;
     private final LocalSearch localSearch;
-    private final Random random = new Random();
+    private final Random random;
 
     public Greedy(Instance instance, LocalSearch localSearch) {
         this.instance = instance;
         this.localSearch = localSearch;
+        this.random = new Random();
+    }
+
+    public Greedy(Instance instance, LocalSearch localSearch, long seed) {
+        this.instance = instance;
+        this.localSearch = localSearch;
+        this.random = new Random(seed);
     }
 
     public Solution run() {
+        GreedyEvent event = new GreedyEvent();
+        event.begin();
         double startTime = System.currentTimeMillis();
 
         List<Route> routes = new ArrayList<>();
-        List<Node> freeNodes = new ArrayList<>(instance.clientNodes());
+        NeighborIndex freeNodes = new NeighborIndex(instance);
 
         while (!freeNodes.isEmpty()) {
             Route route = createRoute(freeNodes);
@@ -31,67 +41,62 @@ public class Greedy {
 
         double creationTime = (System.currentTimeMillis() - startTime) / 1000.0;
 
-        Solution solution = localSearch.run(new Solution(routes, "Greedy", creationTime, 0.0));
+        Solution constructed = new Solution(routes, "Greedy", creationTime, 0.0);
+        Solution solution = localSearch.run(constructed);
 
         solution.status = "Greedy";
         solution.creationTime = creationTime;
 
+        event.end();
+        if (event.shouldCommit()) {
+            event.routes = solution.routes.size();
+            event.constructionCost = constructed.getTotalCost();
+            event.finalCost = solution.getTotalCost();
+            event.commit();
+        }
+
         return solution;
     }
 
-    private Route createRoute(List<Node> freeNodes) {
-        List<Node> feasibleNodes = new ArrayList<>(freeNodes);
-
-        double totalRouteDelivery = 0.0;
+    /**
+     * Grows a route from the depot by nearest-neighbor steps, with occasional
+     * random ones, until no free client fits. The route keeps its total pickup
+     * and peak load: appending a client raises every load on the way by its
+     * delivery and adds its pickup at the end, so fit is checked in O(1).
+     */
+    private Route createRoute(NeighborIndex freeNodes) {
         double vehicleCapacity = instance.veichles().getLast().capacity();
+        double routePickup = 0.0;
+        double peakLoad = 0.0;
 
         List<Node> trialRoute = new ArrayList<>();
         Node currentEndNode = instance.depotNode();
 
-        while (!feasibleNodes.isEmpty()) {
-            Node trialNode = null;
-
-            if (currentEndNode != instance.depotNode() && random.nextDouble() < NEAREST_NEIGHBOR_PROBABILITY) {
-                double minDistance = Double.MAX_VALUE;
-
-                for (Node candidate : feasibleNodes) {
-                    double distance = instance.linkManager()
-                            .get(currentEndNode.id(), candidate.id())
-                            .distance();
-
-                    if (distance < minDistance) {
-                        minDistance = distance;
-                        trialNode = candidate;
-                    }
-                }
+        while (!freeNodes.isEmpty()) {
+            double maxDelivery = vehicleCapacity - peakLoad;
+            double maxPickup = vehicleCapacity - routePickup;
+            Node trialNode;
+
+            if (currentEndNode == instance.depotNode()) {
+                trialNode = freeNodes.get(random.nextInt(freeNodes.size()));
+            } else if (random.nextDouble() < NEAREST_NEIGHBOR_PROBABILITY) {
+                trialNode = freeNodes.nearest(currentEndNode, maxDelivery, maxPickup);
             } else {
-                trialNode = feasibleNodes.get(random.nextInt(feasibleNodes.size()));
+                trialNode = freeNodes.get(random.nextInt(freeNodes.size()));
+                if (trialNode.delivery() > maxDelivery || trialNode.pickup() > maxPickup)
+                    trialNode = freeNodes.nearest(currentEndNode, maxDelivery, maxPickup);
             }
 
-            if (isFeasibleRoute(trialRoute, trialNode, totalRouteDelivery + trialNode.delivery(),
-                    vehicleCapacity)) {
-                trialRoute.add(trialNode);
-                currentEndNode = trialNode;
-                totalRouteDelivery += trialNode.delivery();
-            }
-            feasibleNodes.remove(trialNode);
-        }
+            if (trialNode == null)
+                break;
 
-        freeNodes.removeAll(trialRoute);
-        return new Route(trialRoute, instance);
-    }
-
-    private Boolean isFeasibleRoute(List<Node> trialRoute, Node trialNode, double loadTrial, double capacity) {
-        if (loadTrial > capacity)
-            return false;
-
-        for (Node next : trialRoute) {
-            loadTrial += next.pickup() - next.delivery();
-            if (loadTrial > capacity)
-                return false;
+            trialRoute.add(trialNode);
+            freeNodes.remove(trialNode);
+            currentEndNode = trialNode;
+            peakLoad = Math.max(peakLoad + trialNode.delivery(), routePickup + trialNode.pickup());
+            routePickup += trialNode.pickup();
         }
 
-        return loadTrial + trialNode.pickup() - trialNode.delivery() <= capacity;
+        return new Route(trialRoute, instance);
     }
-
 }
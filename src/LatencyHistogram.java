@@ -0,0 +1,85 @@
+import java.io.PrintStream;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram: values are
+ * recorded in microseconds into 32 sub-buckets per power of two, which keeps
+ * the relative error of reported percentiles around 3%.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[SUB_BUCKET_COUNT * (64 - SUB_BUCKET_BITS + 1)];
+    private long totalCount = 0;
+    private long maxValue = 0;
+    private double sum = 0.0;
+
+    public void recordSeconds(double seconds) {
+        record(Math.round(Math.max(seconds, 0.0) * 1E6));
+    }
+
+    public void recordNanos(long nanos) {
+        record(Math.max(nanos, 0L) / 1000);
+    }
+
+    public void record(long micros) {
+        counts[bucketIndex(micros)]++;
+        totalCount++;
+        sum += micros;
+        maxValue = Math.max(maxValue, micros);
+    }
+
+    public long count() {
+        return totalCount;
+    }
+
+    public double mean() {
+        return totalCount == 0 ? 0.0 : sum / totalCount;
+    }
+
+    public long max() {
+        return maxValue;
+    }
+
+    public long percentile(double percentile) {
+        if (totalCount == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long cumulative = 0;
+        for (int index = 0; index < counts.length; index++) {
+            cumulative += counts[index];
+            if (cumulative >= target)
+                return Math.min(highestValueInBucket(index), maxValue);
+        }
+        return maxValue;
+    }
+
+    public void printSummary(PrintStream printer, String name) {
+        printer.printf("%-15s%10d%12.2f%12.2f%12.2f%12.2f%12.2f%n", name, count(), mean() / 1000.0,
+                percentile(50) / 1000.0, percentile(90) / 1000.0, percentile(99) / 1000.0, max() / 1000.0);
+    }
+
+    public static void printHeader(PrintStream printer) {
+        printer.printf("%-15s%10s%12s%12s%12s%12s%12s%n", "PHASE (ms)", "COUNT", "MEAN", "P50", "P90", "P99",
+                "MAX");
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+}
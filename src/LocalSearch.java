@@ -1,18 +1,41 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Predicate;
 
 import data.*;
+import events.LocalSearchOperatorEvent;
 
 public class LocalSearch {
     private final double COST_TOLERANCE = 0.001;
     private final Instance instance;
     // private Solution solution;
+    private RoutePool routePool = null;
+    private double deadline = Double.MAX_VALUE;
+
+    private long movesEvaluated;
+    private int movesApplied;
+    private int routesTouched;
 
     public LocalSearch(Instance instance) {
         this.instance = instance;
     }
 
+    /**
+     * Records the routes of every improved intermediate solution in the pool.
+     */
+    public void setRoutePool(RoutePool routePool) {
+        this.routePool = routePool;
+    }
+
+    /**
+     * Makes run stop at the next route or client once the wall clock passes
+     * deadline, in milliseconds, keeping the improvements found so far.
+     */
+    public void setDeadline(double deadline) {
+        this.deadline = deadline;
+    }
+
     public Solution run(Solution solutionIn) {
         double startTime = System.currentTimeMillis();
         Solution solution = solutionIn;
@@ -29,25 +52,61 @@ public class LocalSearch {
             improved = false;
 
             // Perform 2-opt optimization
-            improved |= performTwoOpt(routes);
+            improved |= runOperator("2-opt", routes, this::performTwoOpt);
 
             // Perform crossover optimization
-            improved |= performCrossover(routes);
+            improved |= runOperator("crossover", routes, this::performCrossover);
 
             // Perform insertion optimization
-            improved |= performInsertion(routes);
+            improved |= runOperator("insertion", routes, this::performInsertion);
 
             // Perform interchange optimization
-            improved |= performInterchange(routes);
+            improved |= runOperator("interchange", routes, this::performInterchange);
 
         }
 
         return new Solution(routes, "LocalSearch", 0.0, (System.currentTimeMillis() - startTime) / 1000);
     }
 
+    private boolean runOperator(String name, List<Route> routes, Predicate<List<Route>> operator) {
+        if (pastDeadline())
+            return false;
+        boolean improved = runOperatorWithEvent(name, routes, operator);
+        if (improved && routePool != null) {
+            for (Route route : routes)
+                routePool.add(route);
+        }
+        return improved;
+    }
+
+    private boolean runOperatorWithEvent(String name, List<Route> routes, Predicate<List<Route>> operator) {
+        LocalSearchOperatorEvent event = new LocalSearchOperatorEvent();
+        if (!event.isEnabled())
+            return operator.test(routes);
+
+        movesEvaluated = 0;
+        movesApplied = 0;
+        routesTouched = 0;
+        double costBefore = routes.stream().mapToDouble(route -> route.totalCost).sum();
+
+        event.begin();
+        boolean improved = operator.test(routes);
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.operator = name;
+            event.movesEvaluated = movesEvaluated;
+            event.movesApplied = movesApplied;
+            event.routesTouched = routesTouched;
+            event.costDelta = routes.stream().mapToDouble(route -> route.totalCost).sum() - costBefore;
+            event.commit();
+        }
+        return improved;
+    }
+
     private boolean performTwoOpt(List<Route> routes) {
         boolean improved = false;
-        for (int route_Index = 0; route_Index < routes.size(); route_Index++) {
+        for (int route_Index = 0; route_Index < routes.size() && !pastDeadline(); route_Index++) {
 
             boolean routeImproved = true;
             while (routeImproved) {
@@ -61,11 +120,14 @@ public class LocalSearch {
                         Collections.reverse(candidateNodes.subList(firstIndex, lastIndex + 1));
 
                         Route candidateRoute = new Route(candidateNodes, instance);
+                        movesEvaluated++;
                         if (!candidateRoute.isFeasible)
                             continue;
 
                         if (candidateRoute.totalCost < route.totalCost - COST_TOLERANCE) {
                             routes.set(route_Index, candidateRoute);
+                            movesApplied++;
+                            routesTouched++;
                             improved = true;
                             routeImproved = true;
                             break outer;
@@ -85,7 +147,7 @@ public class LocalSearch {
         List<Node> omega = new ArrayList<>(instance.clientNodes());
         Collections.shuffle(omega);
 
-        while (!omega.isEmpty()) {
+        while (!omega.isEmpty() && !pastDeadline()) {
             Node nodeR = omega.removeFirst();
 
             List<List<Route>> results = new ArrayList<>();
@@ -93,11 +155,14 @@ public class LocalSearch {
             results.add(tryInsertionInSameRoute(nodeR, routes));
             results.add(tryInsertionInOtherRoutes(nodeR, routes));
 
-            for (List<Route> resultRoute : results) {
+            for (int result = 0; result < results.size(); result++) {
+                List<Route> resultRoute = results.get(result);
                 double resultTotalCost = resultRoute.stream().mapToDouble(route -> route.totalCost).sum();
                 if (resultTotalCost < bestCost - COST_TOLERANCE) {
                     routes = resultRoute;
                     bestCost = resultTotalCost;
+                    movesApplied++;
+                    routesTouched += result + 1;
                 }
             }
         }
@@ -112,7 +177,7 @@ public class LocalSearch {
         List<Node> omega = new ArrayList<>(instance.clientNodes());
         Collections.shuffle(omega);
 
-        while (!omega.isEmpty()) {
+        while (!omega.isEmpty() && !pastDeadline()) {
             Node nodeR = omega.removeFirst();
 
             List<List<Route>> results = new ArrayList<>();
@@ -120,11 +185,14 @@ public class LocalSearch {
             results.add(tryInterchangeInSameRoute(nodeR, routes));
             results.add(tryInterchangeInOtherRoutes(nodeR, routes));
 
-            for (List<Route> resultRoute : results) {
+            for (int result = 0; result < results.size(); result++) {
+                List<Route> resultRoute = results.get(result);
                 double resultTotalCost = resultRoute.stream().mapToDouble(route -> route.totalCost).sum();
                 if (resultTotalCost < bestCost - COST_TOLERANCE) {
                     routes = resultRoute;
                     bestCost = resultTotalCost;
+                    movesApplied++;
+                    routesTouched += result + 1;
                 }
             }
         }
@@ -139,7 +207,7 @@ public class LocalSearch {
         while (routeImproved) {
             routeImproved = false;
 
-            outer: for (int route_IndexA = 0; route_IndexA < routes.size(); route_IndexA++) {
+            outer: for (int route_IndexA = 0; route_IndexA < routes.size() && !pastDeadline(); route_IndexA++) {
                 Route routeA = routes.get(route_IndexA);
 
                 for (int route_IndexB = route_IndexA + 1; route_IndexB < routes.size(); route_IndexB++) {
@@ -162,6 +230,7 @@ public class LocalSearch {
                             newNodesA.addAll(posCutB);
 
                             Route candidateRouteA = new Route(newNodesA, instance);
+                            movesEvaluated++;
                             if (!candidateRouteA.isFeasible)
                                 continue;
 
@@ -203,6 +272,8 @@ public class LocalSearch {
 
                         improved = true;
                         routeImproved = true;
+                        movesApplied++;
+                        routesTouched += 2;
                         break outer;
                     }
                 }
@@ -211,6 +282,10 @@ public class LocalSearch {
         return improved;
     }
 
+    private boolean pastDeadline() {
+        return System.currentTimeMillis() > deadline;
+    }
+
     private int[] findNodeAndRouteIndexContainingNode(Node nodeR, List<Route> routes) {
         for (int route_Index = 0; route_Index < routes.size(); route_Index++) {
             for (int node_Index = 0; node_Index < routes.get(route_Index).nodes.size(); node_Index++) {
@@ -249,6 +324,7 @@ public class LocalSearch {
             candidateNodesR.add(positionK, nodeR);
 
             Route candidateRouteR = new Route(candidateNodesR, instance);
+            movesEvaluated++;
             if (!candidateRouteR.isFeasible)
                 continue;
 
@@ -309,6 +385,7 @@ public class LocalSearch {
                 candidateNodesS.add(k, nodeR);
 
                 Route candidateRouteS = new Route(candidateNodesS, instance);
+                movesEvaluated++;
                 if (!candidateRouteS.isFeasible)
                     continue;
 
@@ -376,6 +453,7 @@ public class LocalSearch {
             Collections.swap(candidateNodesR, nodeR_Index, nodeK_Index);
 
             Route candidateRouteR = new Route(candidateNodesR, instance);
+            movesEvaluated++;
             if (!candidateRouteR.isFeasible)
                 continue;
 
@@ -427,9 +505,11 @@ public class LocalSearch {
                 candidateNodesS.set(nodeS_Index, nodeR);
 
                 Route candidateRouteR = new Route(candidateNodesR, instance);
+                movesEvaluated++;
                 if (!candidateRouteR.isFeasible)
                     continue;
                 Route candidateRouteS = new Route(candidateNodesS, instance);
+                movesEvaluated++;
                 if (!candidateRouteS.isFeasible)
                     continue;
 
@@ -452,4 +532,4 @@ public class LocalSearch {
 
         return copyRoutes;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import data.Instance;
+import data.Solution;
+
+/**
+ * Runs construction + LocalSearch pipelines on a pool of at most one thread
+ * per available core: the first builds a Savings solution, the others seeded
+ * Greedy ones. Each pipeline has its own LocalSearch, as it keeps per-run
+ * state. Pipelines not yet started when the time budget runs out are
+ * skipped, except the first; running ones stop their LocalSearch at the
+ * budget and return what they have, so only a construction under way can
+ * run past it. If no pipeline returns a solution, a Greedy one is built on
+ * the calling thread under the same deadline, so at least one is returned.
+ */
+public class MultiStart {
+    private final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final Instance instance;
+
+    public MultiStart(Instance instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * Returns the solutions built, cheapest first. Greedy start s uses seed + s.
+     */
+    public List<Solution> run(int starts, double timeBudget, long seed) {
+        double deadline = System.currentTimeMillis() + timeBudget * 1000;
+        List<Solution> solutions = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.min(NUMBER_OF_THREADS, starts))) {
+            for (int s = 0; s < starts; s++) {
+                long startSeed = seed + s;
+                boolean required = s == 0;
+                executor.submit(() -> {
+                    if (!required && System.currentTimeMillis() > deadline)
+                        return;
+                    try {
+                        LocalSearch localSearch = new LocalSearch(instance);
+                        localSearch.setDeadline(deadline);
+                        Solution solution = required ? new Savings(instance, localSearch).run()
+                                : new Greedy(instance, localSearch, startSeed).run();
+                        synchronized (solutions) {
+                            solutions.add(solution);
+                        }
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+        }
+
+        // Every pipeline failed or was skipped: fall back to a plain Greedy run on this thread, whose
+        // failure reaches the caller
+        if (solutions.isEmpty()) {
+            LocalSearch localSearch = new LocalSearch(instance);
+            localSearch.setDeadline(deadline);
+            solutions.add(new Greedy(instance, localSearch, seed).run());
+        }
+
+        solutions.sort(Comparator.comparingDouble(Solution::getTotalCost));
+        return solutions;
+    }
+}
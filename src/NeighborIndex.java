@@ -0,0 +1,358 @@
+import java.util.Arrays;
+import java.util.List;
+
+import data.Instance;
+import data.Node;
+
+/**
+ * Nearest free client queries with lazy deletion, for route construction.
+ *
+ * Clients are bucketed in a uniform grid over their coordinates and searched
+ * ring by ring around the query node. Instances given by a distance matrix
+ * carry no coordinates (every node lies on the same point); for them each node
+ * keeps its clients sorted by distance instead. Removed clients are only
+ * dropped from a cell or row when a later query runs into them.
+ *
+ * Nearest-client queries take load limits, so that only clients which still
+ * fit the route are returned. Each grid cell keeps a lower bound on the delivery and pickup
+ * of its clients to skip cells where none can fit.
+ */
+public class NeighborIndex {
+    private final double CLIENTS_PER_CELL = 2.0;
+
+    private final Instance instance;
+    private final boolean[] free;
+    private final int[] freeIds;
+    private final int[] freePosition;
+    private int freeCount;
+
+    // Grid over coordinates
+    private final boolean useGrid;
+    private double minX;
+    private double minY;
+    private double cellWidth;
+    private double cellHeight;
+    private int columns;
+    private int rows;
+    private int[][] cells;
+    private int[] cellSize;
+    private double[] cellMinDelivery;
+    private double[] cellMinPickup;
+
+    // Sorted neighbor rows for distance matrix instances
+    private int[][] neighbors;
+    private int[] firstNeighbor;
+
+    public NeighborIndex(Instance instance) {
+        this.instance = instance;
+        List<Node> clients = instance.clientNodes();
+        this.free = new boolean[instance.numberOfNodes()];
+        this.freeIds = new int[clients.size()];
+        this.freePosition = new int[instance.numberOfNodes()];
+        for (Node client : clients) {
+            free[client.id()] = true;
+            freePosition[client.id()] = freeCount;
+            freeIds[freeCount++] = client.id();
+        }
+
+        this.useGrid = instance.allNodes().stream()
+                .anyMatch(node -> node.x() != instance.depotNode().x() || node.y() != instance.depotNode().y());
+        if (useGrid)
+            buildGrid(clients);
+        else
+            buildNeighborRows(clients);
+    }
+
+    public boolean isEmpty() {
+        return freeCount == 0;
+    }
+
+    public int size() {
+        return freeCount;
+    }
+
+    /**
+     * Free client at the given position, 0 <= index < size().
+     */
+    public Node get(int index) {
+        return instance.allNodes().get(freeIds[index]);
+    }
+
+    public void remove(Node node) {
+        int id = node.id();
+        if (!free[id])
+            return;
+        free[id] = false;
+        int position = freePosition[id];
+        int lastId = freeIds[--freeCount];
+        freeIds[position] = lastId;
+        freePosition[lastId] = position;
+    }
+
+    /**
+     * Nearest free client to the given node with delivery at most maxDelivery
+     * and pickup at most maxPickup, or null if there is none.
+     */
+    public Node nearest(Node from, double maxDelivery, double maxPickup) {
+        if (freeCount == 0)
+            return null;
+        int id = useGrid ? nearestInGrid(from, maxDelivery, maxPickup) : nearestInRow(from, maxDelivery, maxPickup);
+        return id < 0 ? null : instance.allNodes().get(id);
+    }
+
+    /**
+     * Up to k free clients nearest to the given node, nearest first.
+     */
+    public int[] nearest(Node from, int k) {
+        if (!useGrid) {
+            int[] nearest = new int[k];
+            int count = 0;
+            for (int id : neighbors[from.id()]) {
+                if (count == k)
+                    break;
+                if (free[id])
+                    nearest[count++] = id;
+            }
+            return Arrays.copyOf(nearest, count);
+        }
+
+        // Max-heap on distance of the k nearest clients found so far
+        int[] heapIds = new int[k];
+        double[] heapDistances = new double[k];
+        int count = 0;
+
+        int fromColumn = column(from.x());
+        int fromRow = row(from.y());
+        double ringWidth = Math.min(cellWidth, cellHeight);
+        int maxRing = Math.max(columns, rows);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (count == k && heapDistances[0] <= (ring - 1) * ringWidth)
+                break;
+            for (int r = fromRow - ring; r <= fromRow + ring; r++) {
+                if (r < 0 || r >= rows)
+                    continue;
+                boolean edgeRow = r == fromRow - ring || r == fromRow + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int c = fromColumn - ring; c <= fromColumn + ring; c += Math.max(step, 1)) {
+                    if (c < 0 || c >= columns)
+                        continue;
+                    int cell = r * columns + c;
+                    for (int n = 0; n < cellSize[cell]; n++) {
+                        int id = cells[cell][n];
+                        if (!free[id] || id == from.id())
+                            continue;
+                        double distance = distance(from.id(), id);
+                        if (count < k) {
+                            heapIds[count] = id;
+                            heapDistances[count] = distance;
+                            siftUp(heapIds, heapDistances, count++);
+                        } else if (distance < heapDistances[0]) {
+                            heapIds[0] = id;
+                            heapDistances[0] = distance;
+                            siftDown(heapIds, heapDistances, count);
+                        }
+                    }
+                }
+            }
+        }
+
+        int[] nearest = new int[count];
+        for (int n = count - 1; n >= 0; n--) {
+            nearest[n] = heapIds[0];
+            heapIds[0] = heapIds[n];
+            heapDistances[0] = heapDistances[n];
+            siftDown(heapIds, heapDistances, n);
+        }
+        return nearest;
+    }
+
+    private static void siftUp(int[] ids, double[] distances, int k) {
+        while (k > 0) {
+            int parent = (k - 1) / 2;
+            if (distances[parent] >= distances[k])
+                break;
+            swap(ids, distances, parent, k);
+            k = parent;
+        }
+    }
+
+    private static void siftDown(int[] ids, double[] distances, int size) {
+        int k = 0;
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && distances[child + 1] > distances[child])
+                child++;
+            if (distances[k] >= distances[child])
+                break;
+            swap(ids, distances, k, child);
+            k = child;
+        }
+    }
+
+    private static void swap(int[] ids, double[] distances, int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        double distance = distances[a];
+        distances[a] = distances[b];
+        distances[b] = distance;
+    }
+
+    private void buildGrid(List<Node> clients) {
+        minX = Double.MAX_VALUE;
+        minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (Node node : instance.allNodes()) {
+            minX = Math.min(minX, node.x());
+            minY = Math.min(minY, node.y());
+            maxX = Math.max(maxX, node.x());
+            maxY = Math.max(maxY, node.y());
+        }
+
+        int side = Math.max(1, (int) Math.ceil(Math.sqrt(clients.size() / CLIENTS_PER_CELL)));
+        columns = side;
+        rows = side;
+        cellWidth = Math.max((maxX - minX) / columns, Double.MIN_NORMAL);
+        cellHeight = Math.max((maxY - minY) / rows, Double.MIN_NORMAL);
+
+        cellSize = new int[columns * rows];
+        for (Node client : clients)
+            cellSize[cellOf(client)]++;
+        cells = new int[columns * rows][];
+        for (int c = 0; c < cells.length; c++)
+            cells[c] = new int[cellSize[c]];
+
+        cellMinDelivery = new double[cells.length];
+        cellMinPickup = new double[cells.length];
+        Arrays.fill(cellMinDelivery, Double.MAX_VALUE);
+        Arrays.fill(cellMinPickup, Double.MAX_VALUE);
+        Arrays.fill(cellSize, 0);
+        for (Node client : clients) {
+            int c = cellOf(client);
+            cells[c][cellSize[c]++] = client.id();
+            cellMinDelivery[c] = Math.min(cellMinDelivery[c], client.delivery());
+            cellMinPickup[c] = Math.min(cellMinPickup[c], client.pickup());
+        }
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, (int) ((x - minX) / cellWidth));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, (int) ((y - minY) / cellHeight));
+    }
+
+    private int cellOf(Node node) {
+        return row(node.y()) * columns + column(node.x());
+    }
+
+    /**
+     * Searches rings of cells around the query node, stopping once no cell of
+     * the next ring can hold a client closer than the best one found.
+     */
+    private int nearestInGrid(Node from, double maxDelivery, double maxPickup) {
+        int fromColumn = column(from.x());
+        int fromRow = row(from.y());
+        double ringWidth = Math.min(cellWidth, cellHeight);
+        int maxRing = Math.max(columns, rows);
+
+        int bestId = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (bestId >= 0 && bestDistance <= (ring - 1) * ringWidth)
+                break;
+            for (int r = fromRow - ring; r <= fromRow + ring; r++) {
+                if (r < 0 || r >= rows)
+                    continue;
+                boolean edgeRow = r == fromRow - ring || r == fromRow + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int c = fromColumn - ring; c <= fromColumn + ring; c += Math.max(step, 1)) {
+                    if (c < 0 || c >= columns)
+                        continue;
+                    int cell = r * columns + c;
+                    if (cellSize[cell] == 0 || cellMinDelivery[cell] > maxDelivery || cellMinPickup[cell] > maxPickup)
+                        continue;
+                    int candidate = nearestInCell(cell, from, maxDelivery, maxPickup, bestDistance);
+                    if (candidate >= 0) {
+                        bestId = candidate;
+                        bestDistance = distance(from.id(), candidate);
+                    }
+                }
+            }
+        }
+        return bestId;
+    }
+
+    /**
+     * Nearest fitting client of the cell closer than bound, or -1. Removed
+     * clients are compacted out of the cell and its load bounds refreshed.
+     */
+    private int nearestInCell(int cell, Node from, double maxDelivery, double maxPickup, double bound) {
+        int[] ids = cells[cell];
+        int size = 0;
+        int bestId = -1;
+        double minDelivery = Double.MAX_VALUE;
+        double minPickup = Double.MAX_VALUE;
+        for (int k = 0; k < cellSize[cell]; k++) {
+            int id = ids[k];
+            if (!free[id])
+                continue;
+            ids[size++] = id;
+            Node node = instance.allNodes().get(id);
+            minDelivery = Math.min(minDelivery, node.delivery());
+            minPickup = Math.min(minPickup, node.pickup());
+            if (id == from.id() || node.delivery() > maxDelivery || node.pickup() > maxPickup)
+                continue;
+            double distance = distance(from.id(), id);
+            if (distance < bound) {
+                bound = distance;
+                bestId = id;
+            }
+        }
+        cellSize[cell] = size;
+        cellMinDelivery[cell] = minDelivery;
+        cellMinPickup[cell] = minPickup;
+        return bestId;
+    }
+
+    private void buildNeighborRows(List<Node> clients) {
+        int[] clientIds = clients.stream().mapToInt(Node::id).toArray();
+        neighbors = new int[instance.numberOfNodes()][];
+        firstNeighbor = new int[instance.numberOfNodes()];
+        for (Node node : instance.allNodes()) {
+            int from = node.id();
+            neighbors[from] = Arrays.stream(clientIds)
+                    .filter(id -> id != from)
+                    .boxed()
+                    .sorted((a, b) -> Double.compare(distance(from, a), distance(from, b)))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+    }
+
+    private int nearestInRow(Node from, double maxDelivery, double maxPickup) {
+        int[] row = neighbors[from.id()];
+        int k = firstNeighbor[from.id()];
+        while (k < row.length && !free[row[k]])
+            k++;
+        firstNeighbor[from.id()] = k;
+
+        for (; k < row.length; k++) {
+            int id = row[k];
+            if (!free[id])
+                continue;
+            Node node = instance.allNodes().get(id);
+            if (node.delivery() <= maxDelivery && node.pickup() <= maxPickup)
+                return id;
+        }
+        return -1;
+    }
+
+    private double distance(int from, int to) {
+        return instance.linkManager().get(from, to).distance();
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import data.Route;
+import data.Solution;
+
+/**
+ * Bounded pool of distinct feasible routes seen during the search.
+ *
+ * Routes are keyed by their node sequence; the vehicle type and cost follow
+ * from it. Seeing a route again refreshes it, and the least recently seen
+ * route is evicted once the pool is full.
+ */
+public class RoutePool {
+    private final int capacity;
+
+    private final Map<Key, Route> routes;
+
+    private static class Key {
+        final int[] nodeIds;
+        final int hash;
+
+        Key(Route route) {
+            this.nodeIds = new int[route.nodes.size()];
+            for (int n = 0; n < nodeIds.length; n++)
+                nodeIds[n] = route.nodes.get(n).id();
+            this.hash = Arrays.hashCode(nodeIds);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && hash == key.hash && Arrays.equals(nodeIds, key.nodeIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    public RoutePool(int capacity) {
+        this.capacity = capacity;
+        this.routes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Route> eldest) {
+                return size() > RoutePool.this.capacity;
+            }
+        };
+    }
+
+    public void addAll(Solution solution) {
+        for (Route route : solution.routes)
+            add(route);
+    }
+
+    public void add(Route route) {
+        if (!route.isFeasible || route.nodes.isEmpty())
+            return;
+        Key key = new Key(route);
+        if (routes.get(key) == null)
+            routes.put(key, new Route(route));
+    }
+
+    public List<Route> routes() {
+        return new ArrayList<>(routes.values());
+    }
+
+    public int size() {
+        return routes.size();
+    }
+}
@@ -0,0 +1,355 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import data.Instance;
+import data.Node;
+import data.Route;
+import data.Solution;
+
+/**
+ * Ruin-and-recreate large neighborhood search, a cheap intensifier between
+ * subproblem solves.
+ *
+ * Each iteration removes clients by one of four ruin operators (random,
+ * radial around a client, a whole route, or a clique supplied by the caller)
+ * and reinserts them by regret-k insertion; without a clique supplier the
+ * radial operator takes the clique's turn. Insertions are ranked by added
+ * distance times costPerDistance, plus costPerRoute for opening a route; the
+ * rebuilt routes are then costed with the instance's cost function. Routes
+ * keep prefix and suffix maxima of their arc loads, so the capacity check of
+ * an insertion is O(1). Candidates are accepted by record-to-record travel
+ * around the best cost found.
+ */
+public class RuinAndRecreate {
+    private final int MIN_REMOVED = 4;
+    private final int MAX_REMOVED = 40;
+    private final double MAX_REMOVED_FRACTION = 0.25;
+    private final int REGRET_K = 3;
+    private final double RECORD_DEVIATION = 0.01;
+    private final double COST_TOLERANCE = 0.001;
+
+    private final Instance instance;
+    private final double capacity;
+    private final double costPerDistance;
+    private final double costPerRoute;
+    private final IntFunction<List<Node>> cliqueRuin;
+    private final int depotId;
+    private final int[] clientIds;
+    private final int[][] neighbors;
+    private final boolean[] removed;
+    private Random random;
+
+    /**
+     * A route with the load summaries used by insertion. Immutable, so that
+     * untouched routes are shared between candidate solutions.
+     */
+    private class RouteState {
+        final int[] nodes;
+        // Maximum load over arcs 0..k and k..size, arc k entering the k-th node (0-based) or the depot
+        final double[] prefixMax;
+        final double[] suffixMax;
+        private Route route = null;
+
+        RouteState(int[] nodes) {
+            this.nodes = nodes;
+            this.prefixMax = new double[nodes.length + 1];
+            this.suffixMax = new double[nodes.length + 1];
+
+            double load = 0.0;
+            for (int id : nodes)
+                load += node(id).delivery();
+            double[] loads = new double[nodes.length + 1];
+            loads[0] = load;
+            for (int k = 0; k < nodes.length; k++) {
+                load += node(nodes[k]).pickup() - node(nodes[k]).delivery();
+                loads[k + 1] = load;
+            }
+
+            prefixMax[0] = loads[0];
+            for (int k = 1; k <= nodes.length; k++)
+                prefixMax[k] = Math.max(prefixMax[k - 1], loads[k]);
+            suffixMax[nodes.length] = loads[nodes.length];
+            for (int k = nodes.length - 1; k >= 0; k--)
+                suffixMax[k] = Math.max(suffixMax[k + 1], loads[k]);
+        }
+
+        Route route() {
+            if (route == null) {
+                List<Node> routeNodes = new ArrayList<>(nodes.length);
+                for (int id : nodes)
+                    routeNodes.add(node(id));
+                route = new Route(routeNodes, instance);
+            }
+            return route;
+        }
+    }
+
+    public RuinAndRecreate(Instance instance, double costPerDistance, double costPerRoute,
+            IntFunction<List<Node>> cliqueRuin) {
+        this.instance = instance;
+        this.capacity = instance.veichles().getLast().capacity();
+        this.costPerDistance = costPerDistance;
+        this.costPerRoute = costPerRoute;
+        this.cliqueRuin = cliqueRuin;
+        this.depotId = instance.depotNode().id();
+        this.clientIds = instance.clientNodes().stream().mapToInt(Node::id).toArray();
+        this.neighbors = new int[instance.numberOfNodes()][];
+        this.removed = new boolean[instance.numberOfNodes()];
+    }
+
+    /**
+     * Runs up to the given number of iterations from the incumbent and returns
+     * the best solution found, or null if none is cheaper than the incumbent.
+     */
+    public Solution run(Solution incumbent, int iterations, double timeLimit, Random random) {
+        this.random = random;
+        long startTime = System.nanoTime();
+        long deadline = startTime + (long) (timeLimit * 1E9);
+
+        List<RouteState> current = new ArrayList<>();
+        for (Route route : incumbent.routes) {
+            if (route.nodes.isEmpty())
+                continue;
+            RouteState state = new RouteState(route.nodes.stream().mapToInt(Node::id).toArray());
+            state.route = route;
+            current.add(state);
+        }
+        double bestCost = incumbent.getTotalCost();
+        List<RouteState> best = null;
+
+        for (int iteration = 0; iteration < iterations && System.nanoTime() < deadline; iteration++) {
+            List<RouteState> candidate = new ArrayList<>(current);
+            int[] unplaced = ruin(candidate);
+            if (!recreate(candidate, unplaced))
+                continue;
+
+            double cost = 0.0;
+            for (RouteState state : candidate)
+                cost += state.route().totalCost;
+
+            if (cost < bestCost - COST_TOLERANCE) {
+                best = candidate;
+                bestCost = cost;
+            }
+            if (cost < bestCost * (1 + RECORD_DEVIATION))
+                current = candidate;
+        }
+
+        if (best == null)
+            return null;
+        List<Route> routes = new ArrayList<>();
+        for (RouteState state : best)
+            routes.add(state.route());
+        return new Solution(routes, "RuinAndRecreate", 0.0, (System.nanoTime() - startTime) / 1E9);
+    }
+
+    private Node node(int id) {
+        return instance.allNodes().get(id);
+    }
+
+    private double distance(int from, int to) {
+        return instance.linkManager().get(from, to).distance();
+    }
+
+    /**
+     * Removes clients from the routes, dropping routes left empty, and returns
+     * the removed ones.
+     */
+    private int[] ruin(List<RouteState> routes) {
+        int maxRemoved = Math.max(MIN_REMOVED,
+                Math.min(MAX_REMOVED, (int) (clientIds.length * MAX_REMOVED_FRACTION)));
+        int count = Math.min(clientIds.length,
+                MIN_REMOVED + random.nextInt(Math.max(1, maxRemoved - MIN_REMOVED + 1)));
+
+        int[] selected = switch (random.nextInt(4)) {
+            case 0 -> randomRuin(count);
+            case 1 -> radialRuin(count);
+            case 2 -> routeRuin(routes);
+            default -> cliqueRuin != null ? cliqueRuin(count) : radialRuin(count);
+        };
+
+        for (int id : selected)
+            removed[id] = true;
+        for (int r = routes.size() - 1; r >= 0; r--) {
+            RouteState state = routes.get(r);
+            int kept = 0;
+            for (int id : state.nodes) {
+                if (!removed[id])
+                    kept++;
+            }
+            if (kept == state.nodes.length)
+                continue;
+            if (kept == 0) {
+                routes.remove(r);
+                continue;
+            }
+            int[] nodes = new int[kept];
+            kept = 0;
+            for (int id : state.nodes) {
+                if (!removed[id])
+                    nodes[kept++] = id;
+            }
+            routes.set(r, new RouteState(nodes));
+        }
+        for (int id : selected)
+            removed[id] = false;
+        return selected;
+    }
+
+    private int[] randomRuin(int count) {
+        int[] ids = clientIds.clone();
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(ids.length - i);
+            int swap = ids[i];
+            ids[i] = ids[j];
+            ids[j] = swap;
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * A random client and its nearest clients.
+     */
+    private int[] radialRuin(int count) {
+        int baseId = clientIds[random.nextInt(clientIds.length)];
+        if (neighbors[baseId] == null) {
+            neighbors[baseId] = Arrays.stream(clientIds)
+                    .filter(id -> id != baseId)
+                    .boxed()
+                    .sorted((a, b) -> Double.compare(distance(baseId, a), distance(baseId, b)))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        int[] selected = new int[count];
+        selected[0] = baseId;
+        System.arraycopy(neighbors[baseId], 0, selected, 1, count - 1);
+        return selected;
+    }
+
+    private int[] routeRuin(List<RouteState> routes) {
+        return routes.get(random.nextInt(routes.size())).nodes.clone();
+    }
+
+    private int[] cliqueRuin(int count) {
+        return cliqueRuin.apply(count + 1).stream()
+                .mapToInt(Node::id)
+                .filter(id -> id != depotId)
+                .toArray();
+    }
+
+    /**
+     * Reinserts the clients by regret-k: the client placed next is the one
+     * that loses most by not getting its best option. Best insertions are
+     * kept per client and route and refreshed only for the route changed.
+     * Returns false if some client fits nowhere, not even on a route of its
+     * own.
+     */
+    private boolean recreate(List<RouteState> routes, int[] unplaced) {
+        int count = unplaced.length;
+        int maxRoutes = routes.size() + count;
+        double[][] insertionCost = new double[count][maxRoutes];
+        int[][] insertionPosition = new int[count][maxRoutes];
+        double[] newRouteCost = new double[count];
+
+        for (int u = 0; u < count; u++) {
+            int id = unplaced[u];
+            Node client = node(id);
+            newRouteCost[u] = client.delivery() > capacity || client.pickup() > capacity
+                    ? Double.MAX_VALUE
+                    : costPerDistance * (distance(depotId, id) + distance(id, depotId)) + costPerRoute;
+            for (int r = 0; r < routes.size(); r++)
+                bestInsertion(routes.get(r), id, insertionCost[u], insertionPosition[u], r);
+        }
+
+        boolean[] placed = new boolean[count];
+        double[] options = new double[REGRET_K];
+        for (int step = 0; step < count; step++) {
+            int chosen = -1;
+            double chosenRegret = -1.0;
+            double chosenCost = Double.MAX_VALUE;
+            int chosenRoute = -1;
+
+            for (int u = 0; u < count; u++) {
+                if (placed[u])
+                    continue;
+
+                Arrays.fill(options, Double.MAX_VALUE);
+                int bestRoute = -1;
+                for (int r = 0; r <= routes.size(); r++) {
+                    double cost = r < routes.size() ? insertionCost[u][r] : newRouteCost[u];
+                    if (cost >= options[REGRET_K - 1])
+                        continue;
+                    int k = REGRET_K - 1;
+                    while (k > 0 && options[k - 1] > cost) {
+                        options[k] = options[k - 1];
+                        k--;
+                    }
+                    options[k] = cost;
+                    if (k == 0)
+                        bestRoute = r;
+                }
+                if (bestRoute < 0)
+                    return false;
+
+                double regret = 0.0;
+                for (int k = 1; k < REGRET_K && options[k] < Double.MAX_VALUE; k++)
+                    regret += options[k] - options[0];
+                if (regret > chosenRegret || (regret == chosenRegret && options[0] < chosenCost)) {
+                    chosen = u;
+                    chosenRegret = regret;
+                    chosenCost = options[0];
+                    chosenRoute = bestRoute;
+                }
+            }
+
+            placed[chosen] = true;
+            int id = unplaced[chosen];
+            if (chosenRoute == routes.size()) {
+                routes.add(new RouteState(new int[] { id }));
+            } else {
+                RouteState state = routes.get(chosenRoute);
+                int position = insertionPosition[chosen][chosenRoute];
+                int[] nodes = new int[state.nodes.length + 1];
+                System.arraycopy(state.nodes, 0, nodes, 0, position);
+                nodes[position] = id;
+                System.arraycopy(state.nodes, position, nodes, position + 1, state.nodes.length - position);
+                routes.set(chosenRoute, new RouteState(nodes));
+            }
+
+            for (int u = 0; u < count; u++) {
+                if (!placed[u])
+                    bestInsertion(routes.get(chosenRoute), unplaced[u], insertionCost[u], insertionPosition[u],
+                            chosenRoute);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cheapest feasible position for the client in the route, stored at index
+     * r of cost and position; Double.MAX_VALUE if it does not fit.
+     */
+    private void bestInsertion(RouteState state, int id, double[] cost, int[] position, int r) {
+        Node client = node(id);
+        double bestCost = Double.MAX_VALUE;
+        int bestPosition = -1;
+        int previousId = depotId;
+        for (int k = 0; k <= state.nodes.length; k++) {
+            int nextId = k < state.nodes.length ? state.nodes[k] : depotId;
+            if (state.prefixMax[k] + client.delivery() <= capacity
+                    && state.suffixMax[k] + client.pickup() <= capacity) {
+                double delta = distance(previousId, id) + distance(id, nextId) - distance(previousId, nextId);
+                if (delta < bestCost) {
+                    bestCost = delta;
+                    bestPosition = k;
+                }
+            }
+            previousId = nextId;
+        }
+        cost[r] = bestCost == Double.MAX_VALUE ? Double.MAX_VALUE : costPerDistance * bestCost;
+        position[r] = bestPosition;
+    }
+}
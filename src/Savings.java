@@ -0,0 +1,247 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import data.Instance;
+import data.Node;
+import data.Route;
+import data.Solution;
+
+/**
+ * Clarke-Wright savings construction for simultaneous pickup and delivery.
+ *
+ * Every client starts on its own route and routes are concatenated, end of
+ * one to start of the other, in decreasing order of the saving
+ * c(i,0) + c(0,j) - c(i,j). Each route keeps its total delivery D, total
+ * pickup P and peak load M, so a concatenation A + B is checked in O(1): its
+ * peak is max(M_A + D_B, M_B + P_A). Savings are kept in a primitive max-heap;
+ * above NEAREST_PAIRS_THRESHOLD nodes only pairs among the NEAREST_NEIGHBORS
+ * closest clients of each client are considered.
+ */
+public class Savings {
+    private final int NEAREST_PAIRS_THRESHOLD = 1000;
+    private final int NEAREST_NEIGHBORS = 30;
+
+    private final Instance instance;
+    private final LocalSearch localSearch;
+    private final int numberOfNodes;
+    private final int depotId;
+    private final double capacity;
+
+    // Routes are identified by the id of their first client at creation
+    private int[] routeOf;
+    private int[] first;
+    private int[] last;
+    private int[] next;
+    private double[] routeDelivery;
+    private double[] routePickup;
+    private double[] routePeak;
+
+    /**
+     * Max-heap of savings over parallel primitive arrays; a pair (i,j) is
+     * stored as i * numberOfNodes + j.
+     */
+    private static class SavingsHeap {
+        private double[] savings;
+        private int[] pairs;
+        private int size = 0;
+
+        SavingsHeap(int initialCapacity) {
+            savings = new double[Math.max(initialCapacity, 16)];
+            pairs = new int[savings.length];
+        }
+
+        void add(double saving, int pair) {
+            if (size == savings.length) {
+                savings = Arrays.copyOf(savings, size * 2);
+                pairs = Arrays.copyOf(pairs, size * 2);
+            }
+            savings[size] = saving;
+            pairs[size] = pair;
+            size++;
+        }
+
+        void heapify() {
+            for (int k = size / 2 - 1; k >= 0; k--)
+                siftDown(k);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int topPair() {
+            return pairs[0];
+        }
+
+        void pop() {
+            size--;
+            savings[0] = savings[size];
+            pairs[0] = pairs[size];
+            siftDown(0);
+        }
+
+        private void siftDown(int k) {
+            double saving = savings[k];
+            int pair = pairs[k];
+            while (true) {
+                int child = 2 * k + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && savings[child + 1] > savings[child])
+                    child++;
+                if (savings[child] <= saving)
+                    break;
+                savings[k] = savings[child];
+                pairs[k] = pairs[child];
+                k = child;
+            }
+            savings[k] = saving;
+            pairs[k] = pair;
+        }
+    }
+
+    public Savings(Instance instance, LocalSearch localSearch) {
+        this.instance = instance;
+        this.localSearch = localSearch;
+        this.numberOfNodes = instance.numberOfNodes();
+        this.depotId = instance.depotNode().id();
+        this.capacity = instance.veichles().getLast().capacity();
+    }
+
+    public Solution run() {
+        Solution constructed = construct();
+        Solution solution = localSearch.run(constructed);
+        solution.status = "Savings";
+        solution.creationTime = constructed.creationTime;
+        return solution;
+    }
+
+    /**
+     * The savings solution without local search.
+     */
+    public Solution construct() {
+        double startTime = System.currentTimeMillis();
+
+        initializeRoutes();
+        SavingsHeap heap = numberOfNodes > NEAREST_PAIRS_THRESHOLD ? nearestSavings() : allSavings();
+        heap.heapify();
+
+        while (!heap.isEmpty()) {
+            int pair = heap.topPair();
+            heap.pop();
+            tryMerge(pair / numberOfNodes, pair % numberOfNodes);
+        }
+
+        double creationTime = (System.currentTimeMillis() - startTime) / 1000.0;
+
+        return new Solution(buildRoutes(), "Savings", creationTime, 0.0);
+    }
+
+    private void initializeRoutes() {
+        routeOf = new int[numberOfNodes];
+        first = new int[numberOfNodes];
+        last = new int[numberOfNodes];
+        next = new int[numberOfNodes];
+        routeDelivery = new double[numberOfNodes];
+        routePickup = new double[numberOfNodes];
+        routePeak = new double[numberOfNodes];
+
+        for (Node node : instance.clientNodes()) {
+            int i = node.id();
+            routeOf[i] = i;
+            first[i] = i;
+            last[i] = i;
+            next[i] = -1;
+            routeDelivery[i] = node.delivery();
+            routePickup[i] = node.pickup();
+            routePeak[i] = Math.max(node.delivery(), node.pickup());
+        }
+    }
+
+    private double saving(int i, int j) {
+        return distance(i, depotId) + distance(depotId, j) - distance(i, j);
+    }
+
+    private double distance(int i, int j) {
+        return instance.linkManager().get(i, j).distance();
+    }
+
+    private SavingsHeap allSavings() {
+        List<Node> clients = instance.clientNodes();
+        SavingsHeap heap = new SavingsHeap(clients.size() * (clients.size() - 1));
+        for (Node nodeI : clients) {
+            for (Node nodeJ : clients) {
+                if (nodeI == nodeJ)
+                    continue;
+                double saving = saving(nodeI.id(), nodeJ.id());
+                if (saving > 0)
+                    heap.add(saving, nodeI.id() * numberOfNodes + nodeJ.id());
+            }
+        }
+        return heap;
+    }
+
+    /**
+     * Savings of the pairs (i,j) and (j,i) for the NEAREST_NEIGHBORS closest
+     * clients j of each client i, found through a NeighborIndex.
+     */
+    private SavingsHeap nearestSavings() {
+        List<Node> clients = instance.clientNodes();
+        int neighbors = Math.min(NEAREST_NEIGHBORS, clients.size() - 1);
+        SavingsHeap heap = new SavingsHeap(clients.size() * neighbors * 2);
+
+        NeighborIndex index = new NeighborIndex(instance);
+        for (Node nodeI : clients) {
+            int i = nodeI.id();
+            for (int j : index.nearest(nodeI, neighbors)) {
+                double saving = saving(i, j);
+                if (saving > 0)
+                    heap.add(saving, i * numberOfNodes + j);
+                saving = saving(j, i);
+                if (saving > 0)
+                    heap.add(saving, j * numberOfNodes + i);
+            }
+        }
+        return heap;
+    }
+
+    /**
+     * Appends the route starting at j to the route ending at i, if i and j
+     * are such route ends on different routes and the merged route fits.
+     * Ends only grow into interior nodes and peaks only grow, so a rejected
+     * pair never becomes valid later.
+     */
+    private void tryMerge(int i, int j) {
+        int a = routeOf[i];
+        int b = routeOf[j];
+        if (a == b || last[a] != i || first[b] != j)
+            return;
+
+        double peak = Math.max(routePeak[a] + routeDelivery[b], routePeak[b] + routePickup[a]);
+        if (peak > capacity)
+            return;
+
+        next[i] = j;
+        for (int node = j; node != -1; node = next[node])
+            routeOf[node] = a;
+        last[a] = last[b];
+        routeDelivery[a] += routeDelivery[b];
+        routePickup[a] += routePickup[b];
+        routePeak[a] = peak;
+    }
+
+    private List<Route> buildRoutes() {
+        List<Route> routes = new ArrayList<>();
+        for (Node node : instance.clientNodes()) {
+            int i = node.id();
+            if (routeOf[i] != i || first[i] != i)
+                continue;
+            List<Node> nodes = new ArrayList<>();
+            for (int n = i; n != -1; n = next[n])
+                nodes.add(instance.allNodes().get(n));
+            routes.add(new Route(nodes, instance));
+        }
+        return routes;
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import data.Instance;
+import data.Route;
+import data.Solution;
+import ilog.concert.IloException;
+import model.cplex.SetPartitioningModel;
+
+/**
+ * Recombines pooled routes: selects the cheapest subset of routes covering
+ * every client exactly once. Solved with CPLEX when it can be loaded and by a
+ * time limited depth-first search otherwise.
+ */
+public class SetPartitioning {
+    private final double COST_TOLERANCE = 0.001;
+    private final int TIME_CHECK_INTERVAL = 256;
+
+    private final int numberOfNodes;
+    private boolean cplexAvailable = true;
+
+    private int[][] columns;
+    private double[] costs;
+
+    // Search state of the fallback
+    private int[][] coverBy;
+    private double[] minCostPerClient;
+    private int[] branchingOrder;
+    private boolean[] covered;
+    private int[] chosen;
+    private int chosenCount;
+    private boolean[] bestSelection;
+    private double bestCost;
+    private double deadline;
+    private long visitedNodes;
+    private boolean timedOut;
+
+    public SetPartitioning(Instance instance) {
+        this.numberOfNodes = instance.numberOfNodes();
+    }
+
+    /**
+     * Returns a solution built from the pooled routes that is cheaper than the
+     * incumbent, or null when none is found within the time limit. The
+     * incumbent routes are always part of the columns, so the problem is
+     * feasible.
+     */
+    public Solution run(List<Route> routes, Solution incumbent, double timeLimit) {
+        double startTime = System.currentTimeMillis();
+
+        List<Route> candidates = new ArrayList<>(routes);
+        candidates.addAll(incumbent.routes);
+        buildColumns(candidates);
+
+        boolean[] start = new boolean[columns.length];
+        Arrays.fill(start, columns.length - incumbent.routes.size(), columns.length, true);
+        double creationTime = (System.currentTimeMillis() - startTime) / 1000;
+
+        boolean[] selected = null;
+        String status = null;
+        if (cplexAvailable) {
+            try (SetPartitioningModel model = new SetPartitioningModel(columns, costs, numberOfNodes, timeLimit)) {
+                model.warmStart(start);
+                selected = model.solve();
+                if (selected != null)
+                    status = model.getStatus();
+            } catch (IloException e) {
+                e.printStackTrace();
+            } catch (LinkageError e) {
+                cplexAvailable = false;
+            }
+        }
+        if (!cplexAvailable) {
+            selected = search(start, incumbent.getTotalCost(), startTime + timeLimit * 1000);
+            status = timedOut ? "Feasible" : "Optimal";
+        }
+        double solvingTime = (System.currentTimeMillis() - startTime) / 1000 - creationTime;
+
+        if (selected == null)
+            return null;
+
+        List<Route> selectedRoutes = new ArrayList<>();
+        for (int c = 0; c < selected.length; c++) {
+            if (selected[c])
+                selectedRoutes.add(new Route(candidates.get(c)));
+        }
+        Solution solution = new Solution(selectedRoutes, status, creationTime, solvingTime);
+        if (solution.getTotalCost() >= incumbent.getTotalCost() - COST_TOLERANCE)
+            return null;
+        return solution;
+    }
+
+    private void buildColumns(List<Route> routes) {
+        columns = new int[routes.size()][];
+        costs = new double[routes.size()];
+        for (int c = 0; c < routes.size(); c++) {
+            Route route = routes.get(c);
+            columns[c] = new int[route.nodes.size()];
+            for (int n = 0; n < route.nodes.size(); n++)
+                columns[c][n] = route.nodes.get(n).id();
+            costs[c] = route.totalCost;
+        }
+    }
+
+    /**
+     * Exact cover search branching on the client with the fewest covering
+     * columns, trying its columns by cost per client. The bound charges each
+     * uncovered client its cheapest cost per client over all columns.
+     */
+    private boolean[] search(boolean[] start, double upperBound, double deadline) {
+        int[] coverCount = new int[numberOfNodes];
+        for (int[] column : columns) {
+            for (int clientId : column)
+                coverCount[clientId]++;
+        }
+
+        coverBy = new int[numberOfNodes][];
+        for (int i = 1; i < numberOfNodes; i++)
+            coverBy[i] = new int[coverCount[i]];
+        Arrays.fill(coverCount, 0);
+        for (int c = 0; c < columns.length; c++) {
+            for (int clientId : columns[c])
+                coverBy[clientId][coverCount[clientId]++] = c;
+        }
+
+        minCostPerClient = new double[numberOfNodes];
+        double rootBound = 0.0;
+        for (int i = 1; i < numberOfNodes; i++) {
+            coverBy[i] = Arrays.stream(coverBy[i]).boxed()
+                    .sorted((a, b) -> Double.compare(costs[a] / columns[a].length, costs[b] / columns[b].length))
+                    .mapToInt(Integer::intValue).toArray();
+            minCostPerClient[i] = costs[coverBy[i][0]] / columns[coverBy[i][0]].length;
+            rootBound += minCostPerClient[i];
+        }
+
+        branchingOrder = new int[numberOfNodes - 1];
+        for (int i = 1; i < numberOfNodes; i++)
+            branchingOrder[i - 1] = i;
+        branchingOrder = Arrays.stream(branchingOrder).boxed()
+                .sorted((a, b) -> Integer.compare(coverBy[a].length, coverBy[b].length))
+                .mapToInt(Integer::intValue).toArray();
+
+        covered = new boolean[numberOfNodes];
+        chosen = new int[numberOfNodes];
+        chosenCount = 0;
+        bestSelection = start;
+        bestCost = upperBound - COST_TOLERANCE;
+        this.deadline = deadline;
+        visitedNodes = 0;
+        timedOut = false;
+
+        branch(0, 0.0, rootBound);
+        return bestSelection == start ? null : bestSelection;
+    }
+
+    private void branch(int orderPosition, double cost, double bound) {
+        if (timedOut || (++visitedNodes % TIME_CHECK_INTERVAL == 0 && System.currentTimeMillis() > deadline)) {
+            timedOut = true;
+            return;
+        }
+
+        while (orderPosition < branchingOrder.length && covered[branchingOrder[orderPosition]])
+            orderPosition++;
+
+        if (orderPosition == branchingOrder.length) {
+            bestCost = cost;
+            bestSelection = new boolean[columns.length];
+            for (int k = 0; k < chosenCount; k++)
+                bestSelection[chosen[k]] = true;
+            return;
+        }
+
+        for (int c : coverBy[branchingOrder[orderPosition]]) {
+            if (!isFree(columns[c]))
+                continue;
+
+            double columnBound = 0.0;
+            for (int clientId : columns[c])
+                columnBound += minCostPerClient[clientId];
+            double childBound = bound - columnBound;
+            if (cost + costs[c] + childBound >= bestCost)
+                continue;
+
+            for (int clientId : columns[c])
+                covered[clientId] = true;
+            chosen[chosenCount++] = c;
+
+            branch(orderPosition + 1, cost + costs[c], childBound);
+
+            chosenCount--;
+            for (int clientId : columns[c])
+                covered[clientId] = false;
+            if (timedOut)
+                return;
+        }
+    }
+
+    private boolean isFree(int[] column) {
+        for (int clientId : column) {
+            if (covered[clientId])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import data.Instance;
+import data.SolutionTrace;
+import data.SolutionWriter;
+import model.ModelFactory;
+import model.cplex.vrpspd.GVRPSPDModel;
+import model.cplex.vrpspd.HVRPSPDModel;
+import model.cplex.vrpspd.VRPSPDModel;
+
+/**
+ * Regenerates the .sol files of a solution trace.
+ *
+ * Usage: SolutionTraceReader traceFile instanceName instanceSet problem [outputDirectory]
+ * where problem is VRPSPD, HVRPSPD or GVRPSPD and selects the cost function.
+ * Files are written next to the trace unless an output directory is given.
+ */
+public class SolutionTraceReader {
+
+    public static void main(String[] args) throws IOException {
+        Path tracePath = Paths.get(args[0]);
+        Instance instance = new Instance(args[1], args[2]);
+        ModelFactory modelFactory = switch (args[3]) {
+            case "VRPSPD" -> VRPSPDModel.factory();
+            case "GVRPSPD" -> GVRPSPDModel.factory();
+            default -> HVRPSPDModel.factory();
+        };
+        modelFactory.setCostFunction(instance);
+
+        Path outputDirectory = args.length > 4 ? Paths.get(args[4]) : tracePath.toAbsolutePath().getParent();
+        Files.createDirectories(outputDirectory);
+
+        int count = 0;
+        for (SolutionTrace.Entry entry : SolutionTrace.read(tracePath, instance)) {
+            entry.solution().exportSolution(instance.instanceName(), outputDirectory.resolve(entry.label()).toString(),
+                    entry.bestSolutionTotalCost(), entry.processTime(), entry.cliqueSize());
+            count++;
+        }
+        SolutionWriter.shared().flush();
+        System.out.printf("%d solutions written to %s%n", count, outputDirectory);
+    }
+}
@@ -13,7 +13,13 @@ class Main {
 public class Solver {
 
     Solver() {
-        String solverStartTime = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss").format(LocalDateTime.now());
+        // Start time of an interrupted run to resume from its checkpoints, or null
+        String resumeStartTime = null;
+        // Start from the best solution archived by earlier runs; runs are then no longer independent
+        boolean seedFromArchive = false;
+
+        String solverStartTime = resumeStartTime != null ? resumeStartTime
+                : DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss").format(LocalDateTime.now());
         String[] filenames = { "instance214" };
 
         int subprobTimeLimit = 30;
@@ -25,7 +31,7 @@ public class Solver {
 
             for (int exec = 1; exec <= numberOfExecutions; exec++) {
                 new VariableDepthNeighborhoodSearch(instance, HVRPSPDModel.factory(), solverStartTime, solverTimeLimit,
-                        subprobTimeLimit, exec);
+                        subprobTimeLimit, exec, resumeStartTime != null, seedFromArchive);
             }
 
         }
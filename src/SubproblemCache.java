@@ -0,0 +1,105 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded memo of subproblem outcomes.
+ *
+ * A subproblem is identified by a 128-bit fingerprint of its sorted arc ids
+ * and of the arcs fixed around it; the entry keeps the best lower bound
+ * proven on its cost. A subproblem whose bound already reaches the incumbent
+ * cost cannot improve it and need not be solved again. The least recently
+ * used entry is evicted once the cache is full.
+ */
+public class SubproblemCache {
+    private final double COST_TOLERANCE = 0.001;
+
+    private final int capacity;
+    private final Map<Key, Double> bounds;
+
+    private int hits = 0;
+
+    private record Key(long first, long second) {
+    }
+
+    public SubproblemCache(int capacity) {
+        this.capacity = capacity;
+        this.bounds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+                return size() > SubproblemCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Whether a subproblem with these arcs was proven unable to go below
+     * incumbentCost.
+     */
+    public boolean isExhausted(int[] arcIds, int[] fixedArcIds, double incumbentCost) {
+        Double bound = bounds.get(key(arcIds, fixedArcIds));
+        if (bound == null || bound < incumbentCost - COST_TOLERANCE)
+            return false;
+        hits++;
+        return true;
+    }
+
+    public void record(int[] arcIds, int[] fixedArcIds, double lowerBound) {
+        bounds.merge(key(arcIds, fixedArcIds), lowerBound, Math::max);
+    }
+
+    public int hits() {
+        return hits;
+    }
+
+    public int size() {
+        return bounds.size();
+    }
+
+    /**
+     * Writes the entries from least to most recently used, so that reading
+     * them back restores the eviction order.
+     */
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeInt(bounds.size());
+        for (Map.Entry<Key, Double> entry : bounds.entrySet()) {
+            output.writeLong(entry.getKey().first());
+            output.writeLong(entry.getKey().second());
+            output.writeDouble(entry.getValue());
+        }
+        output.writeInt(hits);
+    }
+
+    public void readFrom(DataInput input) throws IOException {
+        bounds.clear();
+        int size = input.readInt();
+        for (int i = 0; i < size; i++)
+            bounds.put(new Key(input.readLong(), input.readLong()), input.readDouble());
+        hits = input.readInt();
+    }
+
+    private static Key key(int[] arcIds, int[] fixedArcIds) {
+        long first = 0x9E3779B97F4A7C15L;
+        long second = 0xC2B2AE3D27D4EB4FL;
+        for (int arcId : arcIds) {
+            first = mix(first ^ arcId);
+            second = mix(second + arcId);
+        }
+        // Separates the two arc lists so that moving an arc between them changes the key
+        first = mix(first ^ -1L);
+        second = mix(second + arcIds.length);
+        for (int arcId : fixedArcIds) {
+            first = mix(first ^ arcId);
+            second = mix(second + arcId);
+        }
+        return new Key(first, second);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
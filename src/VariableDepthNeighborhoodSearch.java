@@ -1,25 +1,40 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.NavigableMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
+import data.ArcSet;
 import data.Instance;
-import data.Link;
 import data.Node;
+import data.Route;
 import data.Solution;
+import data.SolutionWriter;
+import events.SubproblemBuildEvent;
+import events.SubproblemSolveEvent;
+import events.VdnsIterationEvent;
 import model.ModelFactory;
-import model.cplex.CplexBaseModel;
+import model.SubproblemModel;
+import model.TerminationPolicy;
 
 public class VariableDepthNeighborhoodSearch {
     private final int MIN_CLIQUE_SIZE = 10;
@@ -27,17 +42,73 @@ public class VariableDepthNeighborhoodSearch {
     private final double COST_TOLERANCE = 0.001;
 
     private final int MAX_SOLUTION_TO_BUILD_CLIQUE = 5;
+    private final int ELITE_POOL_CAPACITY = 10;
+    private final int MAX_SAMPLING_REJECTIONS = 32;
+    private final boolean PERSISTENT_MODEL = false;
+    private final TerminationPolicy[] TERMINATION_POLICIES = { TerminationPolicy.NO_IMPROVEMENT_POSSIBLE };
+    private final int SUBPROBLEM_CACHE_CAPACITY = 10000;
+    private final int[] NO_FIXED_ARCS = new int[0];
+
+    private final int ROUTE_POOL_CAPACITY = 5000;
+    private final int SET_PARTITIONING_INTERVAL = 25;
+    private final double SET_PARTITIONING_TIME_LIMIT = 5.0;
+
+    // When set, intermediate solutions go to one append-only trace per execution instead of a .sol file each
+    private final boolean SOLUTION_TRACE = false;
+    // Parallel greedy starts, limited to a fraction of the solver time
+    private final int MULTI_START_RUNS = 16;
+    private final double MULTI_START_TIME_BUDGET = 10.0;
+    private final double MULTI_START_MAX_TIME_FRACTION = 0.1;
+
+    private final int RUIN_AND_RECREATE_ITERATIONS = 2000;
+    private final double RUIN_AND_RECREATE_TIME_LIMIT = 1.0;
+
+    private final int DECOMPOSITION_MIN_NODES = 1000;
+    private final double DECOMPOSITION_ROUND_TIME = 10.0;
+
+    private final int CHECKPOINT_VERSION = 3;
+    private final double CHECKPOINT_INTERVAL = 60.0;
 
     private final List<Node> nodes;
+    private final List<Node> allNodes;
     private final Node depot;
 
-    private final double startTime;
+    private Random random = new Random();
+    private final AliasTable[] aliasTables;
+    private final boolean[] inClique;
+    private final List<Node> clique = new ArrayList<>();
+
+    private final ArcSet arcSet;
+    private final ArcSet fixedArcSet;
+    private final boolean[] isIncoming;
+    private final boolean[] isOutgoing;
+    private final int[] incomingNodes;
+    private final int[] outgoingNodes;
+
+    private final int[] remainingNodes;
+    private final int[] remainingPosition;
+    private int remainingCount = 0;
+
+    // Base nodes whose subproblem was found exhausted since the incumbent last improved
+    private final boolean[] exhaustedBaseNodes;
+    private int improvementsAtReset = 0;
+
+    private double startTime;
     private final String fileDirectory;
     private final String instanceName;
 
     private final Instance instance;
     private final LocalSearch localSearch;
     private final ModelFactory modelFactory;
+    private final CliqueSizeController cliqueSizeController;
+    private final ElitePool elitePool;
+    private final RoutePool routePool;
+    private final SetPartitioning setPartitioning;
+    private final SubproblemCache subproblemCache;
+    private final BestKnownArchive bestKnownArchive;
+    private final RuinAndRecreate ruinAndRecreate;
+    private final Decomposition decomposition;
+    private SubproblemModel persistentModel = null;
 
     private Solution bestSolution = null;
     private int cliqueSize = MIN_CLIQUE_SIZE;
@@ -47,8 +118,27 @@ public class VariableDepthNeighborhoodSearch {
     private int iterationToBest = 0;
     private int improvementCount = 0;
 
+    private final boolean resume;
+    private double lastCheckpointTime = 0.0;
+
+    // Start from the best solution known from earlier runs instead of the greedy one
+    private final boolean seedFromArchive;
+    private boolean seededFromArchive = false;
+
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private double cliqueBuildTime;
+    private double modelBuildTime;
+    private double modelSolveTime;
+    private double decodeTime;
+    private double localSearchTime;
+
     public VariableDepthNeighborhoodSearch(Instance instance, ModelFactory modelFactory, String solverStartTime,
             int solverTimeLimit, int subproblemTimeLimit, int executionId) {
+        this(instance, modelFactory, solverStartTime, solverTimeLimit, subproblemTimeLimit, executionId, false, false);
+    }
+
+    public VariableDepthNeighborhoodSearch(Instance instance, ModelFactory modelFactory, String solverStartTime,
+            int solverTimeLimit, int subproblemTimeLimit, int executionId, boolean resume, boolean seedFromArchive) {
 
         startTime = System.currentTimeMillis();
         instanceName = instance.instanceName();
@@ -64,67 +154,318 @@ public class VariableDepthNeighborhoodSearch {
 
         this.depot = instance.depotNode();
         this.nodes = instance.clientNodes();
+        this.allNodes = instance.allNodes();
         this.MAX_CLIQUE_SIZE = instance.numberOfNodes();
 
+        this.aliasTables = new AliasTable[instance.numberOfNodes()];
+        this.inClique = new boolean[instance.numberOfNodes()];
+        this.arcSet = new ArcSet(instance.numberOfNodes());
+        this.fixedArcSet = new ArcSet(instance.numberOfNodes());
+        this.isIncoming = new boolean[instance.numberOfNodes()];
+        this.isOutgoing = new boolean[instance.numberOfNodes()];
+        this.incomingNodes = new int[instance.numberOfNodes()];
+        this.outgoingNodes = new int[instance.numberOfNodes()];
+        this.remainingNodes = new int[nodes.size()];
+        this.remainingPosition = new int[instance.numberOfNodes()];
+        this.exhaustedBaseNodes = new boolean[instance.numberOfNodes()];
+
+        this.cliqueSizeController = new CliqueSizeController(MIN_CLIQUE_SIZE, MAX_CLIQUE_SIZE, subproblemTimeLimit);
+        this.elitePool = new ElitePool(instance, ELITE_POOL_CAPACITY);
+        this.routePool = new RoutePool(ROUTE_POOL_CAPACITY);
+        this.setPartitioning = new SetPartitioning(instance);
+        this.subproblemCache = new SubproblemCache(SUBPROBLEM_CACHE_CAPACITY);
+        this.bestKnownArchive = new BestKnownArchive(instance);
+        this.ruinAndRecreate = new RuinAndRecreate(instance, modelFactory.costPerDistanceLowerBound(instance),
+                modelFactory.costPerRouteLowerBound(instance), this::buildRuinClique);
+        this.decomposition = instance.numberOfNodes() >= DECOMPOSITION_MIN_NODES
+                ? new Decomposition(instance, modelFactory.costPerDistanceLowerBound(instance),
+                        modelFactory.costPerRouteLowerBound(instance))
+                : null;
+        this.localSearch.setRoutePool(routePool);
+
+        this.resume = resume;
+        this.seedFromArchive = seedFromArchive;
+
+        for (String phase : new String[] { "clique", "model_build", "solve", "decode", "local_search", "iteration" })
+            histograms.put(phase, new LatencyHistogram());
+
         executeLNSAlgoritm(subproblemTimeLimit, solverTimeLimit);
     }
 
     public void executeLNSAlgoritm(int subproblemTimeLimit, int solverTimeLimit) {
-        this.bestSolution = new Greedy(instance, localSearch).run();
-        exportSolution(bestSolution, "", 0);
-        iterationCounter++;
-
-        TreeSet<Solution> allCurrentSolutions = new TreeSet<>(Comparator.comparingDouble(Solution::getTotalCost));
-        allCurrentSolutions.add(bestSolution);
+        boolean resumed = resume && readCheckpoint();
+
+        if (!resumed) {
+            Solution archived = seedFromArchive ? bestKnownArchive.load() : null;
+            if (archived != null) {
+                this.bestSolution = archived;
+                elitePool.add(bestSolution);
+                seededFromArchive = true;
+                System.out.printf("%s seeded from the best-known archive, cost %.2f%n", instanceName,
+                        archived.getTotalCost());
+            } else if (decomposition != null) {
+                // Local search over the whole instance is left to the regions
+                this.bestSolution = new Savings(instance, localSearch).construct();
+                routePool.addAll(bestSolution);
+                elitePool.add(bestSolution);
+            } else {
+                double timeBudget = Math.min(MULTI_START_TIME_BUDGET, solverTimeLimit * MULTI_START_MAX_TIME_FRACTION);
+                List<Solution> startSolutions = new MultiStart(instance).run(MULTI_START_RUNS, timeBudget,
+                        random.nextLong());
+                this.bestSolution = startSolutions.getFirst();
+                for (Solution solution : startSolutions) {
+                    routePool.addAll(solution);
+                    elitePool.add(solution);
+                }
+            }
+            exportSolution(bestSolution, "", 0);
+            iterationCounter++;
+        }
+        for (Solution solution : elitePool)
+            routePool.addAll(solution);
 
-        List<Node> remainingNodes = new ArrayList<>(nodes);
+        PrintStream trace = openTrace(resumed);
 
         do {
+            if (getElapsedTime() - lastCheckpointTime >= CHECKPOINT_INTERVAL)
+                writeCheckpoint();
+
+            if (decomposition != null) {
+                decompose(trace, solverTimeLimit);
+                iterationCounter++;
+                continue;
+            }
+
+            VdnsIterationEvent iterationEvent = new VdnsIterationEvent();
+            iterationEvent.begin();
+            double iterationStartCost = bestSolution.getTotalCost();
 
-            if (remainingNodes.isEmpty())
-                remainingNodes = new ArrayList<>(nodes);
+            long iterationStartTime = System.nanoTime();
+            modelBuildTime = modelSolveTime = decodeTime = localSearchTime = 0.0;
 
-            List<Node> clique = buildClique(remainingNodes, cliqueSize);
+            SubproblemBuildEvent buildEvent = new SubproblemBuildEvent();
+            buildEvent.begin();
 
-            Set<Link> subMatrix = buildSubproblemLinks(clique, allCurrentSolutions);
+            if (remainingCount == 0)
+                resetRemainingNodes();
+
+            List<Node> clique = buildClique(cliqueSize);
+
+            int[] subMatrix = buildSubproblemArcs(clique, elitePool);
+            cliqueBuildTime = (System.nanoTime() - iterationStartTime) / 1E9;
+
+            buildEvent.end();
+            if (buildEvent.shouldCommit()) {
+                buildEvent.cliqueSize = cliqueSize;
+                buildEvent.arcs = subMatrix.length;
+                buildEvent.commit();
+            }
+
+            int[] fixedArcs = PERSISTENT_MODEL ? buildFixedArcs() : NO_FIXED_ARCS;
+            if (subproblemCache.isExhausted(subMatrix, fixedArcs, bestSolution.getTotalCost())) {
+                // Already proven unable to improve the incumbent: move on to another, larger region. A
+                // clique of every node covers all arcs, so the incumbent is then optimal.
+                printTrace(trace, cliqueSize, subMatrix.length, null, "Cached");
+                iterationCounter++;
+                if (cliqueSize == MAX_CLIQUE_SIZE)
+                    break;
+                exhaustedBaseNodes[clique.get(1).id()] = true;
+                cliqueSize = cliqueSizeController.skip(cliqueSize);
+                continue;
+            }
 
             double timeLimit = Math.min(subproblemTimeLimit, solverTimeLimit - getElapsedTime());
             if (timeLimit <= 0)
                 break;
 
             List<Solution> solutionsFromCplex = new LinkedList<>();
+            Solution solvedByCplex = null;
+
+            SubproblemSolveEvent solveEvent = new SubproblemSolveEvent();
+            solveEvent.begin();
 
-            try (CplexBaseModel model = modelFactory.create(instance, subMatrix, timeLimit)) {
-                solutionsFromCplex.addAll(model.solve());
+            double subproblemStartTime = System.currentTimeMillis();
+            try {
+                solutionsFromCplex.addAll(solveSubproblem(subMatrix, fixedArcs, timeLimit));
                 if (solutionsFromCplex.isEmpty())
                     solutionsFromCplex.add(bestSolution);
+                else
+                    solvedByCplex = solutionsFromCplex.getFirst();
+                if (solvedByCplex != null)
+                    subproblemCache.record(subMatrix, fixedArcs, provenBound(solvedByCplex));
+                for (Solution solution : solutionsFromCplex)
+                    routePool.addAll(solution);
             } catch (Exception e) {
                 e.printStackTrace();
             }
-
-            allCurrentSolutions.clear();
-            allCurrentSolutions.add(bestSolution);
+            double subproblemWallTime = (System.currentTimeMillis() - subproblemStartTime) / 1000;
+
+            solveEvent.end();
+            if (solveEvent.shouldCommit()) {
+                solveEvent.cliqueSize = cliqueSize;
+                solveEvent.arcs = subMatrix.length;
+                solveEvent.creationTime = Math.round(modelBuildTime * 1000);
+                solveEvent.solutions = solvedByCplex != null ? solutionsFromCplex.size() : 0;
+                solveEvent.status = solvedByCplex != null ? solvedByCplex.status : "NoSolution";
+                solveEvent.gap = solvedByCplex != null ? solvedByCplex.gap : Double.NaN;
+                solveEvent.costDelta = solvedByCplex != null
+                        ? solvedByCplex.getTotalCost() - iterationStartCost
+                        : 0.0;
+                solveEvent.commit();
+            }
 
             Solution bestSolutionFromCplex = solutionsFromCplex.removeFirst();
 
             if (checkNewSolution(bestSolutionFromCplex))
-                allCurrentSolutions.add(createAndCheckNewLocalSearchSolution(bestSolution));
+                elitePool.add(createAndCheckNewLocalSearchSolution(bestSolution));
 
-            cliqueSize = solutionsFromCplex.isEmpty() || bestSolutionFromCplex.gap > 0.01
-                    ? Math.max(cliqueSize - 1, MIN_CLIQUE_SIZE)
-                    : Math.min(cliqueSize + 1, MAX_CLIQUE_SIZE);
+            int usedCliqueSize = cliqueSize;
+            cliqueSize = cliqueSizeController.update(usedCliqueSize, subMatrix.length, solvedByCplex,
+                    subproblemWallTime);
 
-            solutionsFromCplex.removeAll(allCurrentSolutions);
+            for (Solution solution : solutionsFromCplex) {
+                if (!elitePool.contains(solution))
+                    elitePool.add(createAndCheckNewLocalSearchSolution(solution));
+            }
 
-            // i < Math.min(MAX_SOLUTION_TO_BUILD_CLIQUE, solutionsFromCplex.size());
-            for (int i = 0; i < solutionsFromCplex.size(); i++)
-                allCurrentSolutions.add(createAndCheckNewLocalSearchSolution(solutionsFromCplex.get(i)));
+            intensify(solverTimeLimit);
+
+            if (iterationCounter % SET_PARTITIONING_INTERVAL == 0)
+                recombineRoutes(solverTimeLimit);
+
+            recordHistograms(System.nanoTime() - iterationStartTime);
+            printTrace(trace, usedCliqueSize, subMatrix.length, solvedByCplex,
+                    solvedByCplex != null ? solvedByCplex.status : "NoSolution");
+
+            iterationEvent.end();
+            if (iterationEvent.shouldCommit()) {
+                iterationEvent.iteration = iterationCounter;
+                iterationEvent.cliqueSize = usedCliqueSize;
+                iterationEvent.arcs = subMatrix.length;
+                iterationEvent.poolSize = elitePool.size();
+                iterationEvent.bestCost = bestSolution.getTotalCost();
+                iterationEvent.costDelta = iterationEvent.bestCost - iterationStartCost;
+                iterationEvent.commit();
+            }
 
             iterationCounter++;
         } while (getElapsedTime() < solverTimeLimit);
 
+        if (trace != null)
+            trace.close();
+
+        if (persistentModel != null) {
+            try {
+                persistentModel.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        writeCheckpoint();
         printCnt();
+        printHistograms();
         exportSolution(bestSolution, "best", 0);
+        SolutionWriter.shared().flush();
+        bestKnownArchive.update(bestSolution, getElapsedTime());
+    }
+
+    private List<Solution> solveSubproblem(int[] subMatrix, int[] fixedArcs, double timeLimit) throws Exception {
+        if (!PERSISTENT_MODEL) {
+            try (SubproblemModel model = modelFactory.create(instance, subMatrix, timeLimit)) {
+                model.warmStart(buildStartSolutions(false));
+                return solveModel(model);
+            }
+        }
+
+        if (persistentModel == null)
+            persistentModel = modelFactory.createPersistent(instance, timeLimit);
+
+        persistentModel.setTimeLimit(timeLimit);
+        persistentModel.restrictArcs(subMatrix, fixedArcs);
+        persistentModel.warmStart(buildStartSolutions(true));
+        return solveModel(persistentModel);
+    }
+
+    /**
+     * The incumbent followed by the elite pool members that are feasible in
+     * the current subproblem: all their arcs are in the subproblem arc set
+     * and, for the persistent model, they keep every fixed arc.
+     */
+    private List<Solution> buildStartSolutions(boolean requireFixedArcs) {
+        List<Solution> startSolutions = new ArrayList<>();
+        startSolutions.add(bestSolution);
+
+        for (Solution solution : elitePool) {
+            if (solution == bestSolution || !usesOnlySubproblemArcs(solution))
+                continue;
+            if (requireFixedArcs && !keepsFixedArcs(solution))
+                continue;
+            startSolutions.add(solution);
+        }
+        return startSolutions;
+    }
+
+    /**
+     * Lower bound on the subproblem cost: the solution cost itself when it
+     * was proven optimal.
+     */
+    private double provenBound(Solution solution) {
+        return "Optimal".equals(solution.status) ? solution.getTotalCost() : solution.lowerBound;
+    }
+
+    private boolean usesOnlySubproblemArcs(Solution solution) {
+        for (Route route : solution.routes) {
+            int previousId = depot.id();
+            for (int n = 0; n <= route.nodes.size(); n++) {
+                int nodeId = n < route.nodes.size() ? route.nodes.get(n).id() : depot.id();
+                if (!arcSet.contains(previousId, nodeId))
+                    return false;
+                previousId = nodeId;
+            }
+        }
+        return true;
+    }
+
+    private boolean keepsFixedArcs(Solution solution) {
+        int keptArcs = 0;
+        for (Route route : solution.routes) {
+            int previousId = depot.id();
+            for (int n = 0; n <= route.nodes.size(); n++) {
+                int nodeId = n < route.nodes.size() ? route.nodes.get(n).id() : depot.id();
+                if (fixedArcSet.contains(previousId, nodeId))
+                    keptArcs++;
+                previousId = nodeId;
+            }
+        }
+        return keptArcs == fixedArcSet.size();
+    }
+
+    private List<Solution> solveModel(SubproblemModel model) throws Exception {
+        model.setTermination(bestSolution.getTotalCost() - COST_TOLERANCE, TERMINATION_POLICIES);
+        List<Solution> solutions = model.solve().toList();
+        modelBuildTime = model.getModelCreationTime();
+        modelSolveTime = model.getModelSolvingTime();
+        decodeTime = model.getSolutionDecodingTime();
+        return solutions;
+    }
+
+    /**
+     * Arcs of the incumbent whose both ends lie outside the clique, i.e. the
+     * route segments a persistent model keeps fixed in this subproblem.
+     */
+    private int[] buildFixedArcs() {
+        fixedArcSet.clear();
+        for (Route route : bestSolution.routes) {
+            int previousId = depot.id();
+            for (int n = 0; n <= route.nodes.size(); n++) {
+                int nodeId = n < route.nodes.size() ? route.nodes.get(n).id() : depot.id();
+                if (!inClique[previousId] && !inClique[nodeId])
+                    fixedArcSet.add(previousId, nodeId);
+                previousId = nodeId;
+            }
+        }
+        return fixedArcSet.toArray();
     }
 
     private boolean checkNewSolution(Solution solution) {
@@ -140,7 +481,9 @@ public class VariableDepthNeighborhoodSearch {
     }
 
     private Solution createAndCheckNewLocalSearchSolution(Solution solution) {
+        long localSearchStartTime = System.nanoTime();
         Solution solutionLS = localSearch.run(solution);
+        localSearchTime += (System.nanoTime() - localSearchStartTime) / 1E9;
         if (solutionLS.getTotalCost() < bestSolution.getTotalCost() - COST_TOLERANCE) {
             exportSolution(solutionLS, "ls", 0);
             bestSolution = solutionLS;
@@ -151,103 +494,262 @@ public class VariableDepthNeighborhoodSearch {
         return solutionLS;
     }
 
-    private List<Node> buildClique(List<Node> remainingNodes, int cliqueSize) {
-        List<Node> clique = new ArrayList<>();
-        clique.add(depot);
+    /**
+     * Solves a set partitioning problem over the route pool and keeps the
+     * result when it improves on the incumbent.
+     */
+    private void recombineRoutes(int solverTimeLimit) {
+        double timeLimit = Math.min(SET_PARTITIONING_TIME_LIMIT, solverTimeLimit - getElapsedTime());
+        if (timeLimit <= 0)
+            return;
+
+        Solution solution = setPartitioning.run(routePool.routes(), bestSolution, timeLimit);
+        if (solution == null)
+            return;
+
+        exportSolution(solution, "sp", 0);
+        bestSolution = solution;
+        improvementCount++;
+        timeToBest = getElapsedTime();
+        iterationToBest = iterationCounter;
+        elitePool.add(solution);
+    }
 
-        List<Node> nodesLeft = new ArrayList<>(nodes);
+    /**
+     * Runs the ruin-and-recreate stage from the incumbent and adopts its
+     * best solution, after local search, when it improves.
+     */
+    private void intensify(int solverTimeLimit) {
+        double timeLimit = Math.min(RUIN_AND_RECREATE_TIME_LIMIT, solverTimeLimit - getElapsedTime());
+        if (timeLimit <= 0)
+            return;
+
+        Solution solution = ruinAndRecreate.run(bestSolution, RUIN_AND_RECREATE_ITERATIONS, timeLimit, random);
+        if (solution == null)
+            return;
+
+        routePool.addAll(solution);
+        exportSolution(solution, "rr", 0);
+        bestSolution = solution;
+        improvementCount++;
+        timeToBest = getElapsedTime();
+        iterationToBest = iterationCounter;
+        elitePool.add(createAndCheckNewLocalSearchSolution(solution));
+    }
+
+    /**
+     * One round of the decomposition mode, used instead of subproblems on
+     * instances of at least DECOMPOSITION_MIN_NODES nodes.
+     */
+    private void decompose(PrintStream trace, int solverTimeLimit) {
+        double timeLimit = Math.min(DECOMPOSITION_ROUND_TIME, solverTimeLimit - getElapsedTime());
+        if (timeLimit <= 0)
+            return;
+
+        long roundStartTime = System.nanoTime();
+        Solution solution = decomposition.run(bestSolution, timeLimit, random);
+        if (solution.getTotalCost() < bestSolution.getTotalCost() - COST_TOLERANCE) {
+            routePool.addAll(solution);
+            exportSolution(solution, "dc", 0);
+            bestSolution = solution;
+            improvementCount++;
+            timeToBest = getElapsedTime();
+            iterationToBest = iterationCounter;
+            elitePool.add(solution);
+        }
+        histograms.get("iteration").recordNanos(System.nanoTime() - roundStartTime);
+        printTrace(trace, 0, 0, null, "Decomposition");
+    }
 
-        Node baseNode = selectRandomNode(remainingNodes);
-        remainingNodes.remove(baseNode);
+    private List<Node> buildClique(int cliqueSize) {
+        for (Node node : clique)
+            inClique[node.id()] = false;
+        clique.clear();
 
-        // Node baseNode = selectRandomNode(nodesLeft);
+        clique.add(depot);
+        inClique[depot.id()] = true;
 
-        nodesLeft.remove(baseNode);
+        Node baseNode = allNodes.get(remainingNodes[random.nextInt(remainingCount)]);
+        removeRemainingNode(baseNode);
         clique.add(baseNode);
+        inClique[baseNode.id()] = true;
+
         while (clique.size() < cliqueSize) {
-            // Node nextNode = selectRandomNode(nodesLeft);
-            Node nextNode = selectNodeByDistance(nodesLeft, baseNode);
-            remainingNodes.remove(nextNode);
-            nodesLeft.remove(nextNode);
+            Node nextNode = selectNodeByDistance(baseNode);
+            removeRemainingNode(nextNode);
             clique.add(nextNode);
+            inClique[nextNode.id()] = true;
         }
         return clique;
     }
 
-    private Node selectRandomNode(List<Node> candidates) {
-        return candidates.get(new Random().nextInt(candidates.size()));
+    /**
+     * A clique around a random base node for the ruin-and-recreate stage,
+     * leaving the round of remaining base nodes untouched.
+     */
+    private List<Node> buildRuinClique(int cliqueSize) {
+        for (Node node : clique)
+            inClique[node.id()] = false;
+        clique.clear();
+
+        clique.add(depot);
+        inClique[depot.id()] = true;
+
+        Node baseNode = nodes.get(random.nextInt(nodes.size()));
+        clique.add(baseNode);
+        inClique[baseNode.id()] = true;
+
+        while (clique.size() < cliqueSize) {
+            Node nextNode = selectNodeByDistance(baseNode);
+            clique.add(nextNode);
+            inClique[nextNode.id()] = true;
+        }
+        return clique;
     }
 
-    private Node selectNodeByDistance(List<Node> candidates, Node baseNode) {
-        double totalWeight = candidates.stream()
-                .mapToDouble(node -> 1 / (instance.linkManager().get(baseNode.id(), node.id()).distance() + 0.01))
-                .sum();
+    /**
+     * Starts a new round over the base nodes, leaving out the exhausted ones
+     * unless the incumbent has improved since or every node is exhausted.
+     */
+    private void resetRemainingNodes() {
+        if (improvementCount != improvementsAtReset) {
+            Arrays.fill(exhaustedBaseNodes, false);
+            improvementsAtReset = improvementCount;
+        }
 
-        NavigableMap<Double, Node> probabilityMap = new TreeMap<>();
-        double cumulative = 0;
+        remainingCount = 0;
+        for (Node node : nodes) {
+            remainingPosition[node.id()] = -1;
+            if (exhaustedBaseNodes[node.id()])
+                continue;
+            remainingPosition[node.id()] = remainingCount;
+            remainingNodes[remainingCount++] = node.id();
+        }
 
-        for (Node node : candidates) {
-            double weight = 1 / (instance.linkManager().get(baseNode.id(), node.id()).distance() + 0.01);
-            cumulative += weight / totalWeight;
-            probabilityMap.put(cumulative, node);
+        if (remainingCount == 0) {
+            Arrays.fill(exhaustedBaseNodes, false);
+            resetRemainingNodes();
         }
-        return probabilityMap.ceilingEntry(new Random().nextDouble()).getValue();
     }
 
-    private Set<Link> buildSubproblemLinks(List<Node> clique, TreeSet<Solution> bestSolutions) {
-        Set<Link> linkSet = new HashSet<>();
+    private void removeRemainingNode(Node node) {
+        int position = remainingPosition[node.id()];
+        if (position < 0)
+            return;
+
+        int lastId = remainingNodes[--remainingCount];
+        remainingNodes[position] = lastId;
+        remainingPosition[lastId] = position;
+        remainingPosition[node.id()] = -1;
+    }
+
+    private Node selectNodeByDistance(Node baseNode) {
+        AliasTable aliasTable = aliasTables[baseNode.id()];
+        if (aliasTable == null) {
+            double[] weights = new double[nodes.size()];
+            for (int i = 0; i < nodes.size(); i++) {
+                Node node = nodes.get(i);
+                weights[i] = node == baseNode ? 0.0 : distanceWeight(baseNode, node);
+            }
+            aliasTable = new AliasTable(weights);
+            aliasTables[baseNode.id()] = aliasTable;
+        }
+
+        for (int attempt = 0; attempt < MAX_SAMPLING_REJECTIONS; attempt++) {
+            Node node = nodes.get(aliasTable.sample(random));
+            if (!inClique[node.id()])
+                return node;
+        }
+
+        // Clique already covers most of the weight: fall back to a scan over the nodes left
+        double totalWeight = 0.0;
+        for (Node node : nodes) {
+            if (!inClique[node.id()])
+                totalWeight += distanceWeight(baseNode, node);
+        }
 
-        Set<Node> incoming = new HashSet<>();
-        Set<Node> outgoing = new HashSet<>();
+        double target = random.nextDouble() * totalWeight;
+        Node lastCandidate = null;
+        for (Node node : nodes) {
+            if (inClique[node.id()])
+                continue;
+            lastCandidate = node;
+            target -= distanceWeight(baseNode, node);
+            if (target <= 0)
+                return node;
+        }
+        return lastCandidate;
+    }
 
-        int maxSolutions = Math.min(bestSolutions.size(), MAX_SOLUTION_TO_BUILD_CLIQUE);
+    private double distanceWeight(Node baseNode, Node node) {
+        return 1 / (instance.linkManager().get(baseNode.id(), node.id()).distance() + 0.01);
+    }
 
-        for (int i = 0; i < maxSolutions; i++) {
-            Solution solution = bestSolutions.pollFirst();
+    private int[] buildSubproblemArcs(List<Node> clique, ElitePool bestSolutions) {
+        arcSet.clear();
 
-            linkSet.addAll(solution.getAllLinks());
+        int incomingCount = 0;
+        int outgoingCount = 0;
 
-            solution.routes.forEach(route -> {
-                for (int n = 0; n < route.nodes.size(); n++) {
-                    Node node = route.nodes.get(n);
-                    if (clique.contains(node)) {
-                        incoming.add(node.equals(route.nodes.getFirst()) ? depot : route.nodes.get(n - 1));
-                        outgoing.add(node.equals(route.nodes.getLast()) ? depot : route.nodes.get(n + 1));
+        int usedSolutions = 0;
+        for (Solution solution : bestSolutions) {
+            if (usedSolutions++ == MAX_SOLUTION_TO_BUILD_CLIQUE)
+                break;
+
+            for (Route route : solution.routes) {
+                int previousId = depot.id();
+                for (int n = 0; n <= route.nodes.size(); n++) {
+                    int nodeId = n < route.nodes.size() ? route.nodes.get(n).id() : depot.id();
+                    arcSet.add(previousId, nodeId);
+
+                    if (n < route.nodes.size() && inClique[nodeId]) {
+                        int outgoingId = n + 1 < route.nodes.size() ? route.nodes.get(n + 1).id() : depot.id();
+                        if (!isIncoming[previousId]) {
+                            isIncoming[previousId] = true;
+                            incomingNodes[incomingCount++] = previousId;
+                        }
+                        if (!isOutgoing[outgoingId]) {
+                            isOutgoing[outgoingId] = true;
+                            outgoingNodes[outgoingCount++] = outgoingId;
+                        }
                     }
+                    previousId = nodeId;
                 }
-            });
+            }
         }
 
         // Adiciona arcos de clique para clique
         for (int i = 0; i < clique.size(); i++) {
             for (int j = i + 1; j < clique.size(); j++) {
-                linkSet.add(instance.linkManager().get(clique.get(i).id(), clique.get(j).id()));
-                linkSet.add(instance.linkManager().get(clique.get(j).id(), clique.get(i).id()));
+                arcSet.add(clique.get(i).id(), clique.get(j).id());
+                arcSet.add(clique.get(j).id(), clique.get(i).id());
             }
         }
 
-        // Adiciona arcos de incoming para clique
-        incoming.forEach(node1 -> clique.forEach(node2 -> {
-            if (node1.id() != node2.id()) {
-                linkSet.add(instance.linkManager().get(node1.id(), node2.id()));
-            }
-        }));
+        for (int i = 0; i < incomingCount; i++) {
+            int incomingId = incomingNodes[i];
+
+            // Adiciona arcos de incoming para clique
+            for (Node node : clique)
+                arcSet.add(incomingId, node.id());
+
+            // Adiciona arcos de incoming para outgoing
+            for (int j = 0; j < outgoingCount; j++)
+                arcSet.add(incomingId, outgoingNodes[j]);
+
+            isIncoming[incomingId] = false;
+        }
 
         // Adiciona arcos de clique para outgoing
-        clique.forEach(node1 -> outgoing.forEach(node2 -> {
-            if (node1.id() != node2.id()) {
-                linkSet.add(instance.linkManager().get(node1.id(), node2.id()));
-            }
-        }));
+        for (int j = 0; j < outgoingCount; j++) {
+            int outgoingId = outgoingNodes[j];
+            for (Node node : clique)
+                arcSet.add(node.id(), outgoingId);
 
-        // Adiciona arcos de incoming para outgoing
-        incoming.forEach(node1 -> outgoing.forEach(node2 -> {
-            if (node1.id() != node2.id()) {
-                linkSet.add(instance.linkManager().get(node1.id(), node2.id()));
-            }
-        }));
+            isOutgoing[outgoingId] = false;
+        }
 
-        return linkSet;
+        return arcSet.toArray();
     }
 
     private double getElapsedTime() {
@@ -263,9 +765,158 @@ public class VariableDepthNeighborhoodSearch {
     }
 
     private void exportSolution(Solution solution, String suffix, int cliqueSize) {
-        solution.exportSolution(instanceName,
-                fileDirectory + instanceName + String.format("-%06d", iterationCounter) + suffix + ".sol",
-                bestSolution.getTotalCost(), getElapsedTime(), cliqueSize);
+        String fileName = instanceName + String.format("-%06d", iterationCounter) + suffix + ".sol";
+        if (SOLUTION_TRACE && !suffix.equals("best"))
+            solution.exportToTrace(instanceName, fileDirectory + instanceName + ".sols", fileName,
+                    bestSolution.getTotalCost(), getElapsedTime(), cliqueSize);
+        else
+            solution.exportSolution(instanceName, fileDirectory + fileName,
+                    bestSolution.getTotalCost(), getElapsedTime(), cliqueSize);
+    }
+
+    private PrintStream openTrace(boolean append) {
+        try {
+            PrintStream trace = new PrintStream(
+                    new FileOutputStream(fileDirectory + instanceName + ".trace.csv", append));
+            if (!append)
+                trace.println("iteration,elapsed,clique_size,next_clique_size,arcs,clique_s,model_build_s,solve_s,"
+                        + "decode_s,local_search_s,gap,status,pool_size,improvements,best_cost,decision");
+            return trace;
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void printTrace(PrintStream trace, int usedCliqueSize, int arcCount, Solution solvedByCplex,
+            String status) {
+        if (trace == null)
+            return;
+        trace.printf(Locale.ROOT, "%d,%.3f,%d,%d,%d,%.6f,%.3f,%.3f,%.3f,%.3f,%s,%s,%d,%d,%.4f,%s%n",
+                iterationCounter, getElapsedTime(), usedCliqueSize, cliqueSize, arcCount,
+                cliqueBuildTime, modelBuildTime, modelSolveTime, decodeTime, localSearchTime,
+                solvedByCplex != null ? String.format(Locale.ROOT, "%.6f", solvedByCplex.gap) : "",
+                status, elitePool.size(), improvementCount, bestSolution.getTotalCost(),
+                cliqueSizeController.lastDecision());
+        trace.flush();
+    }
+
+    private void recordHistograms(long iterationNanos) {
+        histograms.get("clique").recordSeconds(cliqueBuildTime);
+        histograms.get("model_build").recordSeconds(modelBuildTime);
+        histograms.get("solve").recordSeconds(modelSolveTime);
+        histograms.get("decode").recordSeconds(decodeTime);
+        histograms.get("local_search").recordSeconds(localSearchTime);
+        histograms.get("iteration").recordNanos(iterationNanos);
+    }
+
+    private void printHistograms() {
+        try (PrintStream printer = new PrintStream(fileDirectory + instanceName + ".lat")) {
+            LatencyHistogram.printHeader(printer);
+            histograms.forEach((phase, histogram) -> histogram.printSummary(printer, phase));
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Path checkpointPath() {
+        return Paths.get(fileDirectory + instanceName + ".ckpt");
+    }
+
+    private void writeCheckpoint() {
+        Path path = checkpointPath();
+        Path temporaryPath = Paths.get(path + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+            output.writeInt(CHECKPOINT_VERSION);
+            output.writeUTF(instanceName);
+            output.writeInt(instance.numberOfNodes());
+
+            output.writeDouble(getElapsedTime());
+            output.writeDouble(timeToBest);
+            output.writeInt(iterationCounter);
+            output.writeInt(iterationToBest);
+            output.writeInt(improvementCount);
+            output.writeBoolean(seededFromArchive);
+
+            ByteArrayOutputStream randomState = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOutput = new ObjectOutputStream(randomState)) {
+                objectOutput.writeObject(random);
+            }
+            output.writeInt(randomState.size());
+            randomState.writeTo(output);
+
+            output.writeInt(remainingCount);
+            for (int i = 0; i < remainingCount; i++)
+                output.writeInt(remainingNodes[i]);
+            output.writeInt(improvementsAtReset);
+            for (boolean exhausted : exhaustedBaseNodes)
+                output.writeBoolean(exhausted);
+
+            cliqueSizeController.writeTo(output);
+            bestSolution.writeTo(output);
+            elitePool.writeTo(output);
+            subproblemCache.writeTo(output);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastCheckpointTime = getElapsedTime();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean readCheckpoint() {
+        Path path = checkpointPath();
+        if (!Files.exists(path))
+            return false;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != CHECKPOINT_VERSION || !input.readUTF().equals(instanceName)
+                    || input.readInt() != instance.numberOfNodes())
+                return false;
+
+            double elapsedTime = input.readDouble();
+            timeToBest = input.readDouble();
+            iterationCounter = input.readInt();
+            iterationToBest = input.readInt();
+            improvementCount = input.readInt();
+            seededFromArchive = input.readBoolean();
+
+            byte[] randomState = new byte[input.readInt()];
+            input.readFully(randomState);
+            try (ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(randomState))) {
+                random = (Random) objectInput.readObject();
+            }
+
+            remainingCount = input.readInt();
+            Arrays.fill(remainingPosition, -1);
+            for (int i = 0; i < remainingCount; i++) {
+                remainingNodes[i] = input.readInt();
+                remainingPosition[remainingNodes[i]] = i;
+            }
+            improvementsAtReset = input.readInt();
+            for (int i = 0; i < exhaustedBaseNodes.length; i++)
+                exhaustedBaseNodes[i] = input.readBoolean();
+
+            cliqueSizeController.readFrom(input);
+            cliqueSize = cliqueSizeController.cliqueSize();
+            bestSolution = Solution.readFrom(input, instance);
+            elitePool.readFrom(input);
+            subproblemCache.readFrom(input);
+
+            startTime = System.currentTimeMillis() - elapsedTime * 1000;
+            lastCheckpointTime = elapsedTime;
+            return true;
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
     private void printCnt() {
@@ -276,6 +927,8 @@ public class VariableDepthNeighborhoodSearch {
             printer.printf("%-30s%8d%n", "ITERATIONS", iterationCounter);
             printer.printf("%-30s%8d%n", "ITERATIONS TO BEST", iterationToBest);
             printer.printf("%-30s%8d%n", "IMPROVEMENTS", improvementCount);
+            printer.printf("%-30s%8d%n", "CACHED SUBPROBLEMS", subproblemCache.hits());
+            printer.printf("%-30s%8s%n", "SEEDED FROM ARCHIVE", seededFromArchive ? "yes" : "no");
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,62 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * Set of arcs identified by originId * numberOfNodes + destinyId, backed by a
+ * bitset that can be cleared and reused between iterations.
+ */
+public class ArcSet {
+
+    private final int numberOfNodes;
+    private final long[] words;
+    private int size = 0;
+
+    public ArcSet(int numberOfNodes) {
+        this.numberOfNodes = numberOfNodes;
+        this.words = new long[(numberOfNodes * numberOfNodes + 63) >>> 6];
+    }
+
+    public boolean add(int originId, int destinyId) {
+        if (originId == destinyId)
+            return false;
+
+        int arcId = originId * numberOfNodes + destinyId;
+        long mask = 1L << arcId;
+        int index = arcId >>> 6;
+        if ((words[index] & mask) != 0)
+            return false;
+
+        words[index] |= mask;
+        size++;
+        return true;
+    }
+
+    public boolean contains(int originId, int destinyId) {
+        int arcId = originId * numberOfNodes + destinyId;
+        return (words[arcId >>> 6] & (1L << arcId)) != 0;
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0L);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] toArray() {
+        int[] arcIds = new int[size];
+        int count = 0;
+        for (int index = 0; index < words.length; index++) {
+            long word = words[index];
+            while (word != 0) {
+                arcIds[count++] = (index << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return arcIds;
+    }
+
+}
@@ -176,6 +176,47 @@ public class Instance {
         this.linkManager = linkManager;
     }
 
+    /**
+     * Sub-instance made of the parent's depot and the given clients, renumbered
+     * from 1 in the given order. Keeps the parent's fleet, distances and cost
+     * function.
+     */
+    public Instance(Instance parent, String instanceName, List<Node> clients) {
+        this.instanceName = instanceName;
+        this.instanceSet = parent.instanceSet;
+        this.numberOfNodes = clients.size() + 1;
+        this.numberOfVeichles = parent.numberOfVeichles;
+        this.veichles = parent.veichles;
+        this.costFunction = parent.costFunction;
+
+        List<Node> parentNodes = new ArrayList<>(numberOfNodes);
+        parentNodes.add(parent.depotNode);
+        parentNodes.addAll(clients);
+
+        this.allNodes = new ArrayList<>(numberOfNodes);
+        double totalPickup = 0;
+        double totalDelivery = 0;
+        for (Node node : parentNodes) {
+            allNodes.add(new Node(allNodes.size(), node.pickup(), node.delivery(), node.x(), node.y()));
+            totalPickup += node.pickup();
+            totalDelivery += node.delivery();
+        }
+        this.totalPickup = totalPickup;
+        this.totalDelivery = totalDelivery;
+        this.depotNode = allNodes.getFirst();
+        this.clientNodes = new ArrayList<>(allNodes.subList(1, allNodes.size()));
+
+        this.linkManager = new LinkManager(numberOfNodes);
+        for (int i = 0; i < numberOfNodes; i++) {
+            for (int j = 0; j < numberOfNodes; j++) {
+                if (i != j) {
+                    double dist = parent.linkManager.get(parentNodes.get(i).id(), parentNodes.get(j).id()).distance();
+                    linkManager.set(new Link(allNodes.get(i), allNodes.get(j), dist));
+                }
+            }
+        }
+    }
+
     private double calculateEuclideanDistance(Node n1, Node n2) {
         return Math.sqrt(Math.pow(n1.x() - n2.x(), 2) + Math.pow(n1.y() - n2.y(), 2));
     }
@@ -22,6 +22,14 @@ public class LinkManager {
         }
     }
 
+    public LinkManager(LinkManager source, int[] arcIds) {
+        this.numberOfNodes = source.numberOfNodes;
+        this.linkMatrix = new Link[numberOfNodes][numberOfNodes];
+        for (int arcId : arcIds) {
+            linkMatrix[arcId / numberOfNodes][arcId % numberOfNodes] = source.get(arcId);
+        }
+    }
+
     public void set(Link link) {
         linkMatrix[link.origin().id()][link.destiny().id()] = link;
     }
@@ -35,6 +43,25 @@ public class LinkManager {
         return linkMatrix[originId][destinyId];
     }
 
+    public Link get(int arcId) {
+        return linkMatrix[arcId / numberOfNodes][arcId % numberOfNodes];
+    }
+
+    public int arcId(int originId, int destinyId) {
+        return originId * numberOfNodes + destinyId;
+    }
+
+    public int[] getAllArcIds() {
+        ArcSet arcSet = new ArcSet(numberOfNodes);
+        for (int i = 0; i < numberOfNodes; i++) {
+            for (int j = 0; j < numberOfNodes; j++) {
+                if (linkMatrix[i][j] != null)
+                    arcSet.add(i, j);
+            }
+        }
+        return arcSet.toArray();
+    }
+
     public List<Link> getAll() {
         List<Link> allLinks = new ArrayList<>();
         for (Link[] row : linkMatrix) {
@@ -66,4 +93,4 @@ public class LinkManager {
         return outgoingLinks;
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
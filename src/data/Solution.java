@@ -1,15 +1,16 @@
 package data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import events.SolutionExportEvent;
+
 public class Solution {
 
     public double lowerBound;
@@ -65,52 +66,139 @@ public class Solution {
                 .collect(Collectors.toList());
     }
 
+    public int[] getSuccessors(int numberOfNodes) {
+        int[] successors = new int[numberOfNodes];
+        for (Route route : routes) {
+            for (int n = 0; n < route.nodes.size(); n++) {
+                successors[route.nodes.get(n).id()] = n + 1 < route.nodes.size() ? route.nodes.get(n + 1).id() : 0;
+            }
+        }
+        return successors;
+    }
+
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeUTF(status);
+        output.writeDouble(lowerBound);
+        output.writeDouble(gap);
+        output.writeDouble(creationTime);
+        output.writeDouble(solvingTime);
+        output.writeInt(routes.size());
+        for (Route route : routes) {
+            output.writeInt(route.nodes.size());
+            for (Node node : route.nodes)
+                output.writeInt(node.id());
+        }
+    }
+
+    public static Solution readFrom(DataInput input, Instance instance) throws IOException {
+        String status = input.readUTF();
+        double lowerBound = input.readDouble();
+        double gap = input.readDouble();
+        double creationTime = input.readDouble();
+        double solvingTime = input.readDouble();
+
+        int numberOfRoutes = input.readInt();
+        List<Route> routes = new ArrayList<>(numberOfRoutes);
+        for (int r = 0; r < numberOfRoutes; r++) {
+            int numberOfNodes = input.readInt();
+            List<Node> nodes = new ArrayList<>(numberOfNodes);
+            for (int n = 0; n < numberOfNodes; n++)
+                nodes.add(instance.allNodes().get(input.readInt()));
+            routes.add(new Route(nodes, instance));
+        }
+
+        return new Solution(routes, lowerBound, gap, status, creationTime, solvingTime, "");
+    }
+
+    /**
+     * Parses a file written by exportSolution back into a solution of the
+     * given instance. Only the routes are read; costs, vehicles and loads are
+     * recomputed. Throws an IOException when the routes do not visit every
+     * client exactly once or are infeasible.
+     */
+    public static Solution readSolutionFile(Path path, Instance instance) throws IOException {
+        List<Route> routes = new ArrayList<>();
+        boolean[] visited = new boolean[instance.numberOfNodes()];
+        int visitedCount = 0;
+
+        for (String line : Files.readAllLines(path)) {
+            if (!line.startsWith("Veichle"))
+                continue;
+
+            // Veichle <id> Route <n>: 0 <node ids> 0
+            String[] tokens = line.trim().split("\\s+");
+            List<Node> nodes = new ArrayList<>();
+            for (int t = 4; t < tokens.length; t++) {
+                int nodeId;
+                try {
+                    nodeId = Integer.parseInt(tokens[t]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed route in " + path + ": " + line);
+                }
+                if (nodeId == instance.depotNode().id())
+                    continue;
+                if (nodeId < 0 || nodeId >= instance.numberOfNodes() || visited[nodeId])
+                    throw new IOException("Invalid or repeated node " + nodeId + " in " + path);
+                visited[nodeId] = true;
+                visitedCount++;
+                nodes.add(instance.allNodes().get(nodeId));
+            }
+
+            Route route = new Route(nodes, instance);
+            if (!route.isFeasible)
+                throw new IOException("Infeasible route in " + path + ": " + line);
+            routes.add(route);
+        }
+
+        if (visitedCount != instance.clientNodes().size())
+            throw new IOException("Solution in " + path + " visits " + visitedCount + " of "
+                    + instance.clientNodes().size() + " clients");
+        return new Solution(routes, "Loaded", 0.0, 0.0);
+    }
+
+    /**
+     * Queues the solution file on the shared SolutionWriter and returns
+     * without waiting for it to be written.
+     */
     public void exportSolution(String instanceName, String fileDirectory, double bestSolutionTotalCost,
             double processTime, int cliqueSize) {
-        final String FfileDirectory = fileDirectory;
-        final double FbestSolutionTotalCost = bestSolutionTotalCost;
-        final double totalCost = getTotalCost();
-        final double lowerBound = this.lowerBound;
-        final double gap = this.gap;
-        final String status = this.status;
-        final double creationTime = this.creationTime;
-        final double solvingTime = this.solvingTime;
-        final double FprocessTime = processTime;
-        final int FcliqueSize = cliqueSize;
-
-        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
-            executor.submit(() -> {
-                try (PrintStream printer = new PrintStream(FfileDirectory)) {
-                    printer.printf("%-15s%15.2f\n", "Best cost:", FbestSolutionTotalCost);
-                    printer.printf("%-15s%15.2f\n", "Total cost:", totalCost);
-                    printer.printf("%-15s%15.2f\n", "Lower bound:", lowerBound);
-                    printer.printf("%-15s%15.4f\n", "Gap:", gap);
-                    printer.printf("%-15s%15s\n", "Status:", status);
-                    printer.printf("%-15s%15.2f\n", "Creation time:", creationTime);
-                    printer.printf("%-15s%15.2f\n", "Solving time:", solvingTime);
-                    printer.printf("%-15s%15.2f\n", "Process time:", FprocessTime);
-                    printer.printf("%-15s%15d\n", "Clique size:", FcliqueSize);
-                    printer.println("------------------------------");
-                    int routeCount = 1;
-                    for (Route route : routes) {
-                        printer.printf("%-15s", "Veichle " + route.veichle.id());
-                        printer.printf("%-15s", "Route " + (routeCount++) + ": ");
-                        printer.printf("%5d", 0);
-                        for (Node node : route.nodes)
-                            printer.printf("%5d", node.id());
-                        printer.printf("%5d", 0);
-                        printer.println();
-                        printer.println("------------------------------");
-                    }
-                    if (!cplexLog.isEmpty()) {
-                        printer.println();
-                        printer.println("CPLEX LOG:");
-                        printer.println(cplexLog);
-                    }
-                } catch (IOException e) {
-                    Logger.getLogger(Solution.class.getName()).log(Level.SEVERE, "Exception during solution export", e);
-                }
-            });
+        SolutionExportEvent event = new SolutionExportEvent();
+        event.begin();
+
+        double totalCost = getTotalCost();
+        SolutionWriter.shared().submit(new SolutionWriter.Export(instanceName, null, fileDirectory,
+                bestSolutionTotalCost, totalCost, lowerBound, gap, status, creationTime, solvingTime, processTime,
+                cliqueSize, List.copyOf(routes), cplexLog));
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = fileDirectory;
+            event.routes = routes.size();
+            event.totalCost = totalCost;
+            event.commit();
+        }
+    }
+
+    /**
+     * Queues the solution as a record of the SolutionTrace at traceFile,
+     * labelled with the .sol file name it stands for.
+     */
+    public void exportToTrace(String instanceName, String traceFile, String label, double bestSolutionTotalCost,
+            double processTime, int cliqueSize) {
+        SolutionExportEvent event = new SolutionExportEvent();
+        event.begin();
+
+        double totalCost = getTotalCost();
+        SolutionWriter.shared().submit(new SolutionWriter.Export(instanceName, traceFile, label,
+                bestSolutionTotalCost, totalCost, lowerBound, gap, status, creationTime, solvingTime, processTime,
+                cliqueSize, List.copyOf(routes), ""));
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = traceFile;
+            event.routes = routes.size();
+            event.totalCost = totalCost;
+            event.commit();
         }
     }
 
@@ -0,0 +1,88 @@
+package data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only binary file holding every solution exported during one
+ * execution, in place of one .sol file each.
+ *
+ * The file starts with TRACE_VERSION and the instance name. Each record holds
+ * the name the .sol file would have had, the export metadata (best cost,
+ * process time, clique size, total cost) and the solution in the
+ * Solution.writeTo format. CPLEX logs are not kept.
+ */
+public class SolutionTrace implements AutoCloseable {
+    private static final int TRACE_VERSION = 1;
+
+    public record Entry(String label, double bestSolutionTotalCost, double processTime, int cliqueSize,
+            double totalCost, Solution solution) {
+    }
+
+    private final DataOutputStream output;
+
+    /**
+     * Opens a trace for appending, writing the header if the file is new.
+     */
+    public SolutionTrace(Path path, String instanceName) throws IOException {
+        boolean exists = Files.exists(path) && Files.size(path) > 0;
+        this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if (!exists) {
+            output.writeInt(TRACE_VERSION);
+            output.writeUTF(instanceName);
+        }
+    }
+
+    public void append(String label, double bestSolutionTotalCost, double processTime, int cliqueSize,
+            double totalCost, Solution solution) throws IOException {
+        output.writeUTF(label);
+        output.writeDouble(bestSolutionTotalCost);
+        output.writeDouble(processTime);
+        output.writeInt(cliqueSize);
+        output.writeDouble(totalCost);
+        solution.writeTo(output);
+    }
+
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * Reads every complete record of a trace; a record cut short by an
+     * interrupted run is ignored.
+     */
+    public static List<Entry> read(Path path, Instance instance) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != TRACE_VERSION)
+                throw new IOException("Unsupported solution trace version: " + path);
+            if (!input.readUTF().equals(instance.instanceName()))
+                throw new IOException("Solution trace of another instance: " + path);
+
+            while (true) {
+                try {
+                    entries.add(new Entry(input.readUTF(), input.readDouble(), input.readDouble(), input.readInt(),
+                            input.readDouble(), Solution.readFrom(input, instance)));
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+        return entries;
+    }
+}
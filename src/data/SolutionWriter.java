@@ -0,0 +1,214 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes solution files on a single background thread.
+ *
+ * Exports are queued with a snapshot of the solution and formatted and written
+ * by the writer thread, which drains the queue in batches and reuses one
+ * buffer for all files. Exports with a trace file are appended to that
+ * SolutionTrace instead, which stays open until flush and is flushed after
+ * every batch. The queue is bounded: when the writer falls behind, submit
+ * blocks until there is room. flush waits until every queued file has been
+ * written.
+ */
+public class SolutionWriter {
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int BATCH_SIZE = 32;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private static SolutionWriter shared = null;
+
+    private final BlockingQueue<Export> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final List<Export> batch = new ArrayList<>(BATCH_SIZE);
+    private final Map<String, SolutionTrace> traces = new HashMap<>();
+    private final StringBuilder text = new StringBuilder(INITIAL_BUFFER_SIZE);
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private long submitted = 0;
+    private long written = 0;
+
+    // traceFile is null for a plain .sol export; otherwise file is the record label
+    record Export(String instanceName, String traceFile, String file, double bestSolutionTotalCost,
+            double totalCost, double lowerBound, double gap, String status, double creationTime,
+            double solvingTime, double processTime, int cliqueSize, List<Route> routes, String cplexLog) {
+    }
+
+    // Queued by flush to close the open traces once everything before it is written
+    private static final Export CLOSE_TRACES = new Export(null, null, null, 0, 0, 0, 0, null, 0, 0, 0, 0, null,
+            null);
+
+    private SolutionWriter() {
+        Thread thread = new Thread(this::run, "solution-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The writer shared by every export of the run, started on first use.
+     */
+    public static synchronized SolutionWriter shared() {
+        if (shared == null)
+            shared = new SolutionWriter();
+        return shared;
+    }
+
+    void submit(Export export) {
+        synchronized (this) {
+            submitted++;
+        }
+        try {
+            queue.put(export);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (this) {
+                submitted--;
+            }
+        }
+    }
+
+    /**
+     * Blocks until every export submitted so far has been written and the
+     * open traces are closed.
+     */
+    public void flush() {
+        submit(CLOSE_TRACES);
+        synchronized (this) {
+            try {
+                while (written < submitted)
+                    wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+
+            for (Export export : batch) {
+                if (export == CLOSE_TRACES)
+                    closeTraces();
+                else if (export.traceFile() == null)
+                    write(export);
+                else
+                    append(export);
+            }
+            flushTraces();
+
+            synchronized (this) {
+                written += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(Export export) {
+        text.setLength(0);
+        format(export);
+
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > buffer.capacity())
+            buffer = ByteBuffer.allocate(Math.max(bytes.length, buffer.capacity() * 2));
+        buffer.clear();
+        buffer.put(bytes).flip();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(export.file()), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } catch (IOException e) {
+            Logger.getLogger(Solution.class.getName()).log(Level.SEVERE, "Exception during solution export", e);
+        }
+    }
+
+    private void append(Export export) {
+        try {
+            SolutionTrace trace = traces.get(export.traceFile());
+            if (trace == null) {
+                trace = new SolutionTrace(Paths.get(export.traceFile()), export.instanceName());
+                traces.put(export.traceFile(), trace);
+            }
+            trace.append(export.file(), export.bestSolutionTotalCost(), export.processTime(), export.cliqueSize(),
+                    export.totalCost(), new Solution(export.routes(), export.lowerBound(), export.gap(),
+                            export.status(), export.creationTime(), export.solvingTime(), ""));
+        } catch (IOException e) {
+            Logger.getLogger(Solution.class.getName()).log(Level.SEVERE, "Exception during solution export", e);
+        }
+    }
+
+    private void flushTraces() {
+        for (SolutionTrace trace : traces.values()) {
+            try {
+                trace.flush();
+            } catch (IOException e) {
+                Logger.getLogger(Solution.class.getName()).log(Level.SEVERE, "Exception during solution export", e);
+            }
+        }
+    }
+
+    private void closeTraces() {
+        for (SolutionTrace trace : traces.values()) {
+            try {
+                trace.close();
+            } catch (IOException e) {
+                Logger.getLogger(Solution.class.getName()).log(Level.SEVERE, "Exception during solution export", e);
+            }
+        }
+        traces.clear();
+    }
+
+    private void format(Export export) {
+        line("%-15s%15.2f", "Best cost:", export.bestSolutionTotalCost());
+        line("%-15s%15.2f", "Total cost:", export.totalCost());
+        line("%-15s%15.2f", "Lower bound:", export.lowerBound());
+        line("%-15s%15.4f", "Gap:", export.gap());
+        line("%-15s%15s", "Status:", export.status());
+        line("%-15s%15.2f", "Creation time:", export.creationTime());
+        line("%-15s%15.2f", "Solving time:", export.solvingTime());
+        line("%-15s%15.2f", "Process time:", export.processTime());
+        line("%-15s%15d", "Clique size:", export.cliqueSize());
+        text.append("------------------------------\n");
+        int routeCount = 1;
+        for (Route route : export.routes()) {
+            text.append(String.format("%-15s", "Veichle " + route.veichle.id()));
+            text.append(String.format("%-15s", "Route " + (routeCount++) + ": "));
+            text.append(String.format("%5d", 0));
+            for (Node node : route.nodes)
+                text.append(String.format("%5d", node.id()));
+            text.append(String.format("%5d", 0));
+            text.append('\n');
+            text.append("------------------------------\n");
+        }
+        if (!export.cplexLog().isEmpty()) {
+            text.append('\n');
+            text.append("CPLEX LOG:\n");
+            text.append(export.cplexLog()).append('\n');
+        }
+    }
+
+    private void line(String format, Object... args) {
+        text.append(String.format(format, args)).append('\n');
+    }
+}
@@ -0,0 +1,22 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("vrpspd.Greedy")
+@Label("Greedy Construction")
+@Category({ "VRPSPD", "Construction" })
+public class GreedyEvent extends Event {
+
+    @Label("Routes")
+    public int routes;
+
+    @Label("Construction Cost")
+    public double constructionCost;
+
+    @Label("Final Cost")
+    public double finalCost;
+
+}
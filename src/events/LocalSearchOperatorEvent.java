@@ -0,0 +1,28 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("vrpspd.LocalSearchOperator")
+@Label("Local Search Operator Pass")
+@Category({ "VRPSPD", "Local Search" })
+public class LocalSearchOperatorEvent extends Event {
+
+    @Label("Operator")
+    public String operator;
+
+    @Label("Routes Touched")
+    public int routesTouched;
+
+    @Label("Moves Evaluated")
+    public long movesEvaluated;
+
+    @Label("Moves Applied")
+    public int movesApplied;
+
+    @Label("Cost Delta")
+    public double costDelta;
+
+}
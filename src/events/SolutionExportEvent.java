@@ -0,0 +1,22 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("vrpspd.SolutionExport")
+@Label("Solution Export")
+@Category({ "VRPSPD", "Export" })
+public class SolutionExportEvent extends Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Routes")
+    public int routes;
+
+    @Label("Total Cost")
+    public double totalCost;
+
+}
@@ -0,0 +1,19 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("vrpspd.SubproblemBuild")
+@Label("Subproblem Build")
+@Category({ "VRPSPD", "VDNS" })
+public class SubproblemBuildEvent extends Event {
+
+    @Label("Clique Size")
+    public int cliqueSize;
+
+    @Label("Subproblem Arcs")
+    public int arcs;
+
+}
@@ -0,0 +1,36 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("vrpspd.SubproblemSolve")
+@Label("Subproblem Solve")
+@Category({ "VRPSPD", "VDNS" })
+public class SubproblemSolveEvent extends Event {
+
+    @Label("Clique Size")
+    public int cliqueSize;
+
+    @Label("Subproblem Arcs")
+    public int arcs;
+
+    @Label("Model Creation Time")
+    @Timespan(Timespan.MILLISECONDS)
+    public long creationTime;
+
+    @Label("Pool Solutions")
+    public int solutions;
+
+    @Label("Status")
+    public String status;
+
+    @Label("Gap")
+    public double gap;
+
+    @Label("Cost Delta")
+    public double costDelta;
+
+}
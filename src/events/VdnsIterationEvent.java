@@ -0,0 +1,31 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("vrpspd.VdnsIteration")
+@Label("VDNS Iteration")
+@Category({ "VRPSPD", "VDNS" })
+public class VdnsIterationEvent extends Event {
+
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Clique Size")
+    public int cliqueSize;
+
+    @Label("Subproblem Arcs")
+    public int arcs;
+
+    @Label("Elite Pool Size")
+    public int poolSize;
+
+    @Label("Best Cost")
+    public double bestCost;
+
+    @Label("Cost Delta")
+    public double costDelta;
+
+}
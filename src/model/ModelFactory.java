@@ -1,16 +1,29 @@
 package model;
 
-import java.util.Set;
-
 import data.Instance;
-import data.Link;
-import model.cplex.CplexBaseModel;
-import ilog.concert.IloException;
 
 public interface ModelFactory {
 
     void setCostFunction(Instance instance);
 
-    CplexBaseModel create(Instance instance, Set<Link> links, double timeLimit) throws IloException;
+    SubproblemModel create(Instance instance, int[] arcIds, double timeLimit) throws Exception;
+
+    default SubproblemModel createPersistent(Instance instance, double timeLimit) throws Exception {
+        return create(instance, instance.linkManager().getAllArcIds(), timeLimit);
+    }
+
+    /**
+     * Lower bound on the cost of a route per unit of distance travelled.
+     */
+    default double costPerDistanceLowerBound(Instance instance) {
+        return 1.0;
+    }
+
+    /**
+     * Lower bound on the distance independent cost of a route.
+     */
+    default double costPerRouteLowerBound(Instance instance) {
+        return 0.0;
+    }
 
 }
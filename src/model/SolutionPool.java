@@ -0,0 +1,89 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import data.Solution;
+
+/**
+ * Solutions found by the last solve of a model. A pool solution is decoded the
+ * first time it is requested, so solutions nobody looks at cost nothing. The
+ * pool is only valid until the model is solved again or closed.
+ */
+public class SolutionPool implements Iterable<Solution> {
+
+    public interface Decoder {
+        Solution decode(int index, String log) throws Exception;
+    }
+
+    private final Decoder decoder;
+    private final Solution[] decoded;
+    private final String log;
+
+    public SolutionPool(int size, String log, Decoder decoder) {
+        this.decoder = decoder;
+        this.decoded = new Solution[size];
+        this.log = log;
+    }
+
+    public static SolutionPool empty() {
+        return new SolutionPool(0, "", null);
+    }
+
+    public static SolutionPool of(List<Solution> solutions) {
+        SolutionPool pool = new SolutionPool(solutions.size(), "", null);
+        for (int index = 0; index < solutions.size(); index++)
+            pool.decoded[index] = solutions.get(index);
+        return pool;
+    }
+
+    public int size() {
+        return decoded.length;
+    }
+
+    public boolean isEmpty() {
+        return decoded.length == 0;
+    }
+
+    public Solution get(int index) throws Exception {
+        if (decoded[index] == null)
+            decoded[index] = decoder.decode(index, log);
+        return decoded[index];
+    }
+
+    public Solution first() throws Exception {
+        return get(0);
+    }
+
+    public List<Solution> toList() throws Exception {
+        List<Solution> solutions = new ArrayList<>(decoded.length);
+        for (int index = 0; index < decoded.length; index++)
+            solutions.add(get(index));
+        return solutions;
+    }
+
+    @Override
+    public Iterator<Solution> iterator() {
+        return new Iterator<Solution>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < decoded.length;
+            }
+
+            @Override
+            public Solution next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    return get(index++);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package model;
+
+import java.util.List;
+
+import data.Solution;
+
+/**
+ * A VDNS subproblem restricted to a set of arcs, independent of the solver
+ * behind it.
+ */
+public interface SubproblemModel extends AutoCloseable {
+
+    SolutionPool solve() throws Exception;
+
+    /**
+     * Offers start solutions; solutions using arcs outside the model are
+     * ignored.
+     */
+    void warmStart(List<Solution> solutionsIn) throws Exception;
+
+    /**
+     * Restricts the model to arcIds, with every arc in fixedArcIds forced
+     * into the solution.
+     */
+    void restrictArcs(int[] arcIds, int[] fixedArcIds) throws Exception;
+
+    void setTimeLimit(double timeLimit) throws Exception;
+
+    /**
+     * Lets the next solves stop early under any of the given policies.
+     * Models that cannot check a policy ignore it.
+     */
+    default void setTermination(double cutoff, TerminationPolicy... policies) throws Exception {
+    }
+
+    double getModelCreationTime();
+
+    double getModelSolvingTime();
+
+    double getSolutionDecodingTime();
+
+}
@@ -0,0 +1,14 @@
+package model;
+
+/**
+ * Conditions under which a subproblem solve may stop before its time limit,
+ * relative to a cutoff: the cost a solution must beat to be an improvement.
+ */
+public enum TerminationPolicy {
+    // The bound shows no solution below the cutoff exists
+    NO_IMPROVEMENT_POSSIBLE,
+    // A solution below the cutoff has been found
+    FIRST_IMPROVEMENT,
+    // The gap has not decreased for a while
+    GAP_STAGNATION
+}
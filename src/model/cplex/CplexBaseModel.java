@@ -1,18 +1,29 @@
 package model.cplex;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
+import data.Route;
 import data.Solution;
 import ilog.concert.IloException;
 import ilog.cplex.IloCplex;
 import ilog.cplex.IloCplex.MIPEmphasis;
+import model.SolutionPool;
+import model.SubproblemModel;
+import model.TerminationPolicy;
+
+public abstract class CplexBaseModel implements SubproblemModel {
+    // Only the tail of each solve's log is kept and attached to its solutions
+    private static final int LOG_BUFFER_SIZE = 8 * 1024;
+    private static final boolean ECHO_CONSOLE = true;
+
+    // GAP_STAGNATION stops once the gap has not improved by GAP_STAGNATION_DELTA for this long
+    private static final double GAP_STAGNATION_TIME = 1.0;
+    private static final double GAP_STAGNATION_DELTA = 1E-4;
 
-public abstract class CplexBaseModel implements AutoCloseable {
     protected IloCplex cplex;
 
     protected TeeOutputStream teeOutputStream;
@@ -20,31 +31,39 @@ public abstract class CplexBaseModel implements AutoCloseable {
     protected double startTime;
     protected double modelCreationTime;
     protected double modelSolvingTime;
+    protected double solutionDecodingTime;
+
+    protected boolean modelBuilt = false;
+
+    private TerminationCallback terminationCallback = null;
 
     protected static class TeeOutputStream extends OutputStream {
         protected final OutputStream consoleStream;
         protected final OutputStream variableStream;
 
-        public TeeOutputStream(OutputStream variableStream) {
-            this.consoleStream = System.out;
+        public TeeOutputStream(OutputStream variableStream, boolean echoConsole) {
+            this.consoleStream = echoConsole ? System.out : null;
             this.variableStream = variableStream;
         }
 
         @Override
         public void write(int b) throws IOException {
-            consoleStream.write(b);
+            if (consoleStream != null)
+                consoleStream.write(b);
             variableStream.write(b);
         }
 
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
-            consoleStream.write(b, off, len);
+            if (consoleStream != null)
+                consoleStream.write(b, off, len);
             variableStream.write(b, off, len);
         }
 
         @Override
         public void flush() throws IOException {
-            consoleStream.flush();
+            if (consoleStream != null)
+                consoleStream.flush();
             variableStream.flush();
         }
 
@@ -54,10 +73,50 @@ public abstract class CplexBaseModel implements AutoCloseable {
         }
     }
 
+    /**
+     * Aborts the solve as soon as one of the termination policies holds.
+     */
+    private static class TerminationCallback extends IloCplex.MIPInfoCallback {
+        private EnumSet<TerminationPolicy> policies = EnumSet.noneOf(TerminationPolicy.class);
+        private double cutoff = Double.MAX_VALUE;
+        private double lastGap;
+        private double lastGapTime;
+
+        void reset() {
+            lastGap = Double.MAX_VALUE;
+            lastGapTime = 0.0;
+        }
+
+        @Override
+        protected void main() throws IloException {
+            if (policies.contains(TerminationPolicy.NO_IMPROVEMENT_POSSIBLE) && getBestObjValue() >= cutoff) {
+                abort();
+                return;
+            }
+            if (!hasIncumbent())
+                return;
+
+            if (policies.contains(TerminationPolicy.FIRST_IMPROVEMENT) && getIncumbentObjValue() < cutoff) {
+                abort();
+                return;
+            }
+            if (policies.contains(TerminationPolicy.GAP_STAGNATION)) {
+                double gap = getMIPRelativeGap();
+                double time = getCplexTime() - getStartTime();
+                if (gap < lastGap - GAP_STAGNATION_DELTA) {
+                    lastGap = gap;
+                    lastGapTime = time;
+                } else if (time - lastGapTime >= GAP_STAGNATION_TIME) {
+                    abort();
+                }
+            }
+        }
+    }
+
     public CplexBaseModel(double timeLimit) throws IloException {
         this.cplex = new IloCplex();
 
-        this.teeOutputStream = new TeeOutputStream(new ByteArrayOutputStream());
+        this.teeOutputStream = new TeeOutputStream(new LogRingBuffer(LOG_BUFFER_SIZE), ECHO_CONSOLE);
         this.cplex.setOut(new PrintStream(teeOutputStream));
 
         this.cplex.setParam(IloCplex.Param.MIP.Display, 2);
@@ -65,17 +124,53 @@ public abstract class CplexBaseModel implements AutoCloseable {
         this.cplex.setParam(IloCplex.Param.Emphasis.MIP, MIPEmphasis.Heuristic);
     }
 
-    public List<Solution> solve() throws IloException {
-        buildModel();
+    /**
+     * Solves the model and returns its solution pool. Pool solutions are
+     * decoded on demand; the decoding time is accumulated in
+     * getSolutionDecodingTime().
+     */
+    @Override
+    public SolutionPool solve() throws IloException {
+        if (!modelBuilt)
+            buildModel();
 
-        startTime = System.currentTimeMillis();
-        if (cplex.solve()) {
-            modelSolvingTime = (System.currentTimeMillis() - startTime) / 1000;
-            return buildSolution(teeOutputStream.variableStream.toString());
-        }
+        if (teeOutputStream.variableStream instanceof LogRingBuffer log)
+            log.reset();
+
+        if (terminationCallback != null)
+            terminationCallback.reset();
 
+        solutionDecodingTime = 0;
+        startTime = System.currentTimeMillis();
+        boolean solved = cplex.solve();
         modelSolvingTime = (System.currentTimeMillis() - startTime) / 1000;
-        return new ArrayList<>();
+
+        if (!solved)
+            return SolutionPool.empty();
+        return new SolutionPool(cplex.getSolnPoolNsolns(), teeOutputStream.variableStream.toString(), this::decode);
+    }
+
+    private Solution decode(int index, String log) throws IloException {
+        long decodeStartTime = System.nanoTime();
+        Solution solution = decodeSolution(index, log);
+        solutionDecodingTime += (System.nanoTime() - decodeStartTime) / 1E9;
+        return solution;
+    }
+
+    /**
+     * Wraps routes decoded from a pool solution with the bound, gap and
+     * status of the last solve.
+     */
+    protected Solution newSolution(List<Route> routes, String log) throws IloException {
+        return new Solution(
+                routes,
+                cplex.getBestObjValue(),
+                Math.abs(cplex.getObjValue() - cplex.getBestObjValue())
+                        / ((1E-10) + Math.abs(cplex.getObjValue())),
+                cplex.getStatus().toString(),
+                modelCreationTime,
+                modelSolvingTime,
+                log);
     }
 
     protected void buildModel() throws IloException {
@@ -84,6 +179,62 @@ public abstract class CplexBaseModel implements AutoCloseable {
         buildObjective();
         buildConstraints();
         modelCreationTime = (System.currentTimeMillis() - startTime) / 1000;
+        modelBuilt = true;
+    }
+
+    @Override
+    public void setTimeLimit(double timeLimit) throws IloException {
+        cplex.setParam(IloCplex.Param.TimeLimit, timeLimit);
+    }
+
+    @Override
+    public void setTermination(double cutoff, TerminationPolicy... policies) throws IloException {
+        if (terminationCallback == null) {
+            terminationCallback = new TerminationCallback();
+            cplex.use(terminationCallback);
+        }
+        terminationCallback.cutoff = cutoff;
+        terminationCallback.policies.clear();
+        terminationCallback.policies.addAll(List.of(policies));
+    }
+
+    /**
+     * Restricts a persistent model to a subproblem through bounds only: arcs
+     * outside arcIds are fixed to 0 and arcs in fixedArcIds to 1. The
+     * model is built on the first call; the time spent is reported as the
+     * model creation time of the next solve.
+     */
+    @Override
+    public abstract void restrictArcs(int[] arcIds, int[] fixedArcIds) throws IloException;
+
+    /**
+     * Adds the given solutions as MIP starts, building the model first if
+     * needed. Solutions using arcs outside the model are skipped.
+     */
+    @Override
+    public void warmStart(List<Solution> solutionsIn) throws IloException {
+        if (solutionsIn.isEmpty())
+            return;
+        if (!modelBuilt)
+            buildModel();
+        addMIPStarts(solutionsIn);
+    }
+
+    protected abstract void addMIPStarts(List<Solution> solutionsIn) throws IloException;
+
+    @Override
+    public double getModelCreationTime() {
+        return modelCreationTime;
+    }
+
+    @Override
+    public double getModelSolvingTime() {
+        return modelSolvingTime;
+    }
+
+    @Override
+    public double getSolutionDecodingTime() {
+        return solutionDecodingTime;
     }
 
     protected abstract void createVariables() throws IloException;
@@ -92,7 +243,7 @@ public abstract class CplexBaseModel implements AutoCloseable {
 
     protected abstract void buildConstraints() throws IloException;
 
-    protected abstract List<Solution> buildSolution(String log) throws IloException;
+    protected abstract Solution decodeSolution(int index, String log) throws IloException;
 
     @Override
     public void close() throws Exception {
@@ -0,0 +1,71 @@
+package model.cplex;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Output stream keeping only the last capacity bytes written to it, so a long
+ * CPLEX log costs a fixed amount of memory.
+ */
+public class LogRingBuffer extends OutputStream {
+    private final byte[] buffer;
+    private int position = 0;
+    private long written = 0;
+
+    public LogRingBuffer(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        buffer[position] = (byte) b;
+        position = (position + 1) % buffer.length;
+        written++;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        written += len;
+        if (len >= buffer.length) {
+            System.arraycopy(b, off + len - buffer.length, buffer, 0, buffer.length);
+            position = 0;
+            return;
+        }
+
+        int firstPart = Math.min(len, buffer.length - position);
+        System.arraycopy(b, off, buffer, position, firstPart);
+        System.arraycopy(b, off + firstPart, buffer, 0, len - firstPart);
+        position = (position + len) % buffer.length;
+    }
+
+    public synchronized void reset() {
+        position = 0;
+        written = 0;
+    }
+
+    /**
+     * Returns the retained tail of the log, preceded by a marker line when
+     * older output was dropped.
+     */
+    @Override
+    public synchronized String toString() {
+        if (written < buffer.length)
+            return new String(buffer, 0, position, Charset.defaultCharset());
+        // Exactly full: position has wrapped to 0 but nothing was dropped
+        if (written == buffer.length)
+            return new String(buffer, 0, buffer.length, Charset.defaultCharset());
+
+        byte[] tail = new byte[buffer.length];
+        System.arraycopy(buffer, position, tail, 0, buffer.length - position);
+        System.arraycopy(buffer, 0, tail, buffer.length - position, position);
+
+        // Skip the partial first line
+        int start = 0;
+        while (start < tail.length && tail[start] != '\n')
+            start++;
+        start = Math.min(start + 1, tail.length);
+
+        return String.format("[... %d bytes dropped]%n", written - (tail.length - start))
+                + new String(tail, start, tail.length - start, Charset.defaultCharset());
+    }
+}
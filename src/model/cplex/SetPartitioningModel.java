@@ -0,0 +1,74 @@
+package model.cplex;
+
+import ilog.concert.IloException;
+import ilog.concert.IloIntVar;
+import ilog.concert.IloLinearNumExpr;
+import ilog.cplex.IloCplex;
+
+/**
+ * Set partitioning over a fixed set of columns: pick columns of minimum total
+ * cost so that every client is covered exactly once. Columns are given as
+ * client id lists; clients are numbered 1..numberOfNodes-1.
+ */
+public class SetPartitioningModel implements AutoCloseable {
+    private final IloCplex cplex;
+    private final IloIntVar[] columnVars;
+
+    public SetPartitioningModel(int[][] columns, double[] costs, int numberOfNodes, double timeLimit)
+            throws IloException {
+        this.cplex = new IloCplex();
+        this.cplex.setOut(null);
+        this.cplex.setWarning(null);
+        this.cplex.setParam(IloCplex.Param.TimeLimit, timeLimit);
+
+        columnVars = cplex.boolVarArray(columns.length);
+
+        IloLinearNumExpr objective = cplex.linearNumExpr();
+        objective.addTerms(costs, columnVars);
+        cplex.addMinimize(objective);
+
+        IloLinearNumExpr[] cover = new IloLinearNumExpr[numberOfNodes];
+        for (int c = 0; c < columns.length; c++) {
+            for (int clientId : columns[c]) {
+                if (cover[clientId] == null)
+                    cover[clientId] = cplex.linearNumExpr();
+                cover[clientId].addTerm(1.0, columnVars[c]);
+            }
+        }
+        for (int i = 1; i < numberOfNodes; i++) {
+            if (cover[i] != null)
+                cplex.addEq(cover[i], 1.0);
+        }
+    }
+
+    public void warmStart(boolean[] selected) throws IloException {
+        double[] values = new double[selected.length];
+        for (int c = 0; c < selected.length; c++)
+            values[c] = selected[c] ? 1.0 : 0.0;
+        cplex.addMIPStart(columnVars, values, IloCplex.MIPStartEffort.Auto, null);
+    }
+
+    /**
+     * Returns the selected columns of the best solution found, or null when
+     * none was found within the time limit.
+     */
+    public boolean[] solve() throws IloException {
+        if (!cplex.solve())
+            return null;
+
+        double[] values = cplex.getValues(columnVars);
+        boolean[] selected = new boolean[values.length];
+        for (int c = 0; c < values.length; c++)
+            selected[c] = values[c] > 0.5;
+        return selected;
+    }
+
+    public String getStatus() throws IloException {
+        return cplex.getStatus().toString();
+    }
+
+    @Override
+    public void close() {
+        cplex.end();
+    }
+}
@@ -1,7 +1,5 @@
 package model.cplex.vrpspd;
 
-import java.util.Set;
-
 import ilog.concert.IloException;
 import ilog.concert.IloLinearNumExpr;
 
@@ -28,15 +26,20 @@ public class GVRPSPDModel extends VRPSPDModel {
             }
 
             @Override
-            public model.cplex.CplexBaseModel create(Instance instance, Set<Link> links, double timeLimit)
+            public model.cplex.CplexBaseModel create(Instance instance, int[] arcIds, double timeLimit)
                     throws IloException {
-                return new GVRPSPDModel(instance, links, timeLimit);
+                return new GVRPSPDModel(instance, arcIds, timeLimit);
+            }
+
+            @Override
+            public double costPerDistanceLowerBound(Instance instance) {
+                return UNIT_FUEL_COST * FCR_WITHOUT_LOAD;
             }
         };
     }
 
-    public GVRPSPDModel(Instance instance, Set<Link> links, double timeLimit) throws IloException {
-        super(instance, links, timeLimit);
+    public GVRPSPDModel(Instance instance, int[] arcIds, double timeLimit) throws IloException {
+        super(instance, arcIds, timeLimit);
 
         this.alfa = (FCR_FULLY_LOADED - FCR_WITHOUT_LOAD) / this.veichle.capacity();
     }
@@ -48,14 +51,17 @@ public class GVRPSPDModel extends VRPSPDModel {
         double factor = UNIT_FUEL_COST * FCR_WITHOUT_LOAD;
         double alphaFactor = UNIT_FUEL_COST * alfa;
 
-        for (Link link : linkManager.getAll()) {
-            double weightedDistance = link.distance();
-            minExp.addTerm(factor * weightedDistance, pathVars.get(link));
-            minExp.addTerm(alphaFactor * weightedDistance, deliveryVars.get(link));
-            minExp.addTerm(alphaFactor * weightedDistance, pickupVars.get(link));
+        double[] pathCosts = new double[numberOfArcs];
+        double[] loadCosts = new double[numberOfArcs];
+        for (int k = 0; k < numberOfArcs; k++) {
+            pathCosts[k] = factor * arcs[k].distance();
+            loadCosts[k] = alphaFactor * arcs[k].distance();
         }
+        minExp.addTerms(pathCosts, pathVars);
+        minExp.addTerms(loadCosts, deliveryVars);
+        minExp.addTerms(loadCosts, pickupVars);
 
-        cplex.addMinimize(minExp, "expression01");
+        cplex.addMinimize(minExp, name("expression01"));
     }
 
 }
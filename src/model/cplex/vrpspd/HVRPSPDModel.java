@@ -2,15 +2,14 @@ package model.cplex.vrpspd;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.stream.IntStream;
 
 import ilog.concert.IloException;
 import ilog.concert.IloIntVar;
 import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloNumVar;
+import ilog.concert.IloRange;
 
 import data.*;
 import model.ModelFactory;
@@ -26,9 +25,19 @@ public class HVRPSPDModel extends VRPSPDBaseModel {
             }
 
             @Override
-            public model.cplex.CplexBaseModel create(Instance instance, Set<Link> links, double timeLimit)
+            public model.cplex.CplexBaseModel create(Instance instance, int[] arcIds, double timeLimit)
                     throws IloException {
-                return new HVRPSPDModel(instance, links, timeLimit);
+                return new HVRPSPDModel(instance, arcIds, timeLimit);
+            }
+
+            @Override
+            public double costPerDistanceLowerBound(Instance instance) {
+                return instance.veichles().stream().mapToDouble(Veichle::variableCost).min().orElse(0.0);
+            }
+
+            @Override
+            public double costPerRouteLowerBound(Instance instance) {
+                return instance.veichles().stream().mapToDouble(Veichle::fixedCost).min().orElse(0.0);
             }
         };
     }
@@ -36,10 +45,17 @@ public class HVRPSPDModel extends VRPSPDBaseModel {
     private int numberOfVeichles;
     private List<Veichle> veichles;
 
-    private Map<Link, IloIntVar[]> pathVars = new HashMap<>();
+    // pathVars[t][v]: arc typeArcs[t][v] travelled by a vehicle of type t; a type only
+    // gets variables on the arcs whose required capacity it meets
+    private int[][] typeArcs;
+    private IloIntVar[][] pathVars;
+    private IloIntVar[][] pathVarOfArc;
+    // arcRows[k]: sum over the types of arc k, ranged in [lowerBound, 1]; only built once a
+    // persistent model is restricted
+    private IloRange[] arcRows;
 
-    public HVRPSPDModel(Instance instance, Set<Link> links, double timeLimit) throws IloException {
-        super(instance, links, timeLimit);
+    public HVRPSPDModel(Instance instance, int[] arcIds, double timeLimit) throws IloException {
+        super(instance, arcIds, timeLimit);
 
         this.numberOfVeichles = instance.numberOfVeichles();
         this.veichles = instance.veichles();
@@ -47,30 +63,43 @@ public class HVRPSPDModel extends VRPSPDBaseModel {
 
     @Override
     protected void createVariables() throws IloException {
-        for (Link link : linkManager.getAll()) {
-            IloIntVar[] vars = new IloIntVar[numberOfVeichles];
-            for (int t = 0; t < numberOfVeichles; t++)
-                vars[t] = cplex.boolVar("path" + "(" + link.origin().id() + "," + link.destiny().id() + "," + t + ")");
-            pathVars.put(link, vars);
-            deliveryVars.put(link, cplex.numVar(0.0, veichles.getLast().capacity(),
-                    "delivery" + "(" + link.origin().id() + "," + link.destiny().id() + ")"));
-            pickupVars.put(link, cplex.numVar(0.0, veichles.getLast().capacity(),
-                    "pickup" + "(" + link.origin().id() + "," + link.destiny().id() + ")"));
+        typeArcs = new int[numberOfVeichles][];
+        pathVars = new IloIntVar[numberOfVeichles][];
+        pathVarOfArc = new IloIntVar[numberOfVeichles][numberOfArcs];
+        for (int t = 0; t < numberOfVeichles; t++) {
+            double capacity = veichles.get(t).capacity();
+            typeArcs[t] = IntStream.range(0, numberOfArcs).filter(k -> requiredCapacity[k] <= capacity).toArray();
+            pathVars[t] = DEBUG_NAMES ? cplex.boolVarArray(typeArcs[t].length, typeArcNames(t))
+                    : cplex.boolVarArray(typeArcs[t].length);
+            for (int v = 0; v < typeArcs[t].length; v++)
+                pathVarOfArc[t][typeArcs[t][v]] = pathVars[t][v];
         }
+        deliveryVars = createDeliveryVars(maxCapacity);
+        pickupVars = createPickupVars(maxCapacity);
+    }
+
+    private String[] typeArcNames(int t) {
+        String[] names = new String[typeArcs[t].length];
+        for (int v = 0; v < typeArcs[t].length; v++)
+            names[v] = name("path" + t, arcs[typeArcs[t][v]].origin().id(), arcs[typeArcs[t][v]].destiny().id());
+        return names;
     }
 
     @Override
     protected void buildObjective() throws IloException {
         IloLinearNumExpr minExp = cplex.linearNumExpr();
-        for (Link link : linkManager.getAll()) {
-            for (int t = 0; t < numberOfVeichles; t++) {
-                if (link.origin() == depotNode) {
-                    minExp.addTerm(veichles.get(t).fixedCost(), pathVars.get(link)[t]);
-                }
-                minExp.addTerm(veichles.get(t).variableCost() * link.distance(), pathVars.get(link)[t]);
+        for (int t = 0; t < numberOfVeichles; t++) {
+            Veichle veichle = veichles.get(t);
+            double[] costs = new double[typeArcs[t].length];
+            for (int v = 0; v < typeArcs[t].length; v++) {
+                Link arc = arcs[typeArcs[t][v]];
+                costs[v] = veichle.variableCost() * arc.distance();
+                if (arc.origin() == depotNode)
+                    costs[v] += veichle.fixedCost();
             }
+            minExp.addTerms(costs, pathVars[t]);
         }
-        cplex.addMinimize(minExp, "expression01");
+        cplex.addMinimize(minExp, name("expression01"));
     }
 
     @Override
@@ -88,56 +117,49 @@ public class HVRPSPDModel extends VRPSPDBaseModel {
         expression12();
     }
 
-    protected List<Solution> buildSolution(String log) throws IloException {
-        List<Solution> solutionsOut = new ArrayList<>();
-
-        for (int sol = 0; sol < cplex.getSolnPoolNsolns(); sol++) {
-            List<Route> routes = new ArrayList<>();
-
-            for (Link link0 : linkManager.getAllOutbound(depotNode.id())) {
-                for (int i = 0; i < numberOfVeichles; i++) {
-                    if (cplex.getValue(pathVars.get(link0)[i], sol) > 0.9999) {
-                        List<Node> nodes = new ArrayList<>();
-                        int destination = link0.destiny().id();
-                        while (destination != 0) {
-                            for (Link link : linkManager.getAllOutbound(destination)) {
-                                if (cplex.getValue(pathVars.get(link)[i], sol) > 0.9999) {
-                                    nodes.add(link.origin());
-                                    destination = link.destiny().id();
-                                    break;
-                                }
-                            }
-                        }
-                        routes.add(new Route(nodes, instance));
-                    }
-                }
-            }
-
-            solutionsOut.add(new Solution(
-                    routes,
-                    cplex.getBestObjValue(),
-                    Math.abs(cplex.getObjValue() - cplex.getBestObjValue())
-                            / ((1E-10) + Math.abs(cplex.getObjValue())),
-                    cplex.getStatus().toString(),
-                    modelCreationTime,
-                    modelSolvingTime,
-                    log));
+    @Override
+    protected Solution decodeSolution(int index, String log) throws IloException {
+        double[][] pathValues = new double[numberOfVeichles][numberOfArcs];
+        for (int t = 0; t < numberOfVeichles; t++) {
+            double[] values = cplex.getValues(pathVars[t], index);
+            for (int v = 0; v < typeArcs[t].length; v++)
+                pathValues[t][typeArcs[t][v]] = values[v];
         }
+        return newSolution(decodeRoutes(pathValues), log);
+    }
 
-        return solutionsOut;
+    /**
+     * An arc is fixed through the lower bound of its row, since no single type
+     * variable has to take it; the upper bound still goes on the variables.
+     */
+    @Override
+    protected void setArcBounds(int k, double lowerBound, double upperBound) throws IloException {
+        if (arcRows == null)
+            createArcRows();
+        arcRows[k].setLB(lowerBound);
+        for (int t = 0; t < numberOfVeichles; t++) {
+            if (pathVarOfArc[t][k] != null)
+                pathVarOfArc[t][k].setUB(upperBound);
+        }
     }
 
-    public void warmStart(List<Solution> solutionsIn) {
-        try {
-            mipStart(solutionsIn);
-        } catch (IloException e) {
-            e.printStackTrace();
+    private void createArcRows() throws IloException {
+        arcRows = new IloRange[numberOfArcs];
+        for (int k = 0; k < numberOfArcs; k++) {
+            IloLinearNumExpr exp = cplex.linearNumExpr();
+            addPathTerms(exp, k, 1);
+            arcRows[k] = cplex.addRange(0, exp, 1, name("arcRow", arcs[k].origin().id(), arcs[k].destiny().id()));
         }
     }
 
+    @Override
+    protected void addMIPStarts(List<Solution> solutionsIn) throws IloException {
+        mipStart(solutionsIn);
+    }
+
     public void warmStart(Solution solutionIn) {
         try {
-            mipStart(new ArrayList<>(Arrays.asList(solutionIn)));
+            warmStart(new ArrayList<>(Arrays.asList(solutionIn)));
         } catch (IloException e) {
             e.printStackTrace();
         }
@@ -146,39 +168,25 @@ public class HVRPSPDModel extends VRPSPDBaseModel {
     private void expression02() throws IloException {
         for (Node node : clientNodes) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            for (Link link : linkManager.getAllInbound(node.id())) {
-                for (int t = 0; t < numberOfVeichles; t++) {
-                    exp.addTerm(1, pathVars.get(link)[t]);
-                }
-            }
-            cplex.addEq(exp, 1, "expression02(" + node.id() + ")");
+            for (int k : inboundArcs[node.id()])
+                addPathTerms(exp, k, 1);
+            cplex.addEq(exp, 1, name("expression02", node.id()));
         }
     }
 
     private void expression03() throws IloException {
-        for (int i = 1; i < numberOfNodes; i++) {
-            for (int t = 0; t < numberOfVeichles; t++) {
-                IloLinearNumExpr exp = cplex.linearNumExpr();
-                for (Link link : linkManager.getAllInbound(i))
-                    exp.addTerm(1, pathVars.get(link)[t]);
-
-                for (Link link : linkManager.getAllOutbound(i))
-                    exp.addTerm(-1, pathVars.get(link)[t]);
-
-                cplex.addEq(exp, 0, "expression03(" + i + "," + t + ")");
-            }
-        }
-
         for (Node node : clientNodes) {
             for (int t = 0; t < numberOfVeichles; t++) {
                 IloLinearNumExpr exp = cplex.linearNumExpr();
-                for (Link link : linkManager.getAllInbound(node.id())) {
-                    exp.addTerm(1, pathVars.get(link)[t]);
+                for (int k : inboundArcs[node.id()]) {
+                    if (pathVarOfArc[t][k] != null)
+                        exp.addTerm(1, pathVarOfArc[t][k]);
                 }
-                for (Link link : linkManager.getAllOutbound(node.id())) {
-                    exp.addTerm(-1, pathVars.get(link)[t]);
+                for (int k : outboundArcs[node.id()]) {
+                    if (pathVarOfArc[t][k] != null)
+                        exp.addTerm(-1, pathVarOfArc[t][k]);
                 }
-                cplex.addEq(exp, 0, "expression03(" + node.id() + "," + t + ")");
+                cplex.addEq(exp, 0, name("expression03", node.id(), t));
             }
         }
     }
@@ -186,160 +194,139 @@ public class HVRPSPDModel extends VRPSPDBaseModel {
     private void expression04() throws IloException {
         for (Node node : clientNodes) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            for (Link link : linkManager.getAllInbound(node.id())) {
-                exp.addTerm(1, deliveryVars.get(link));
-            }
-            for (Link link : linkManager.getAllOutbound(node.id())) {
-                exp.addTerm(-1, deliveryVars.get(link));
-            }
-            cplex.addEq(exp, node.delivery(), "expression04(" + node.id() + ")");
+            for (int k : inboundArcs[node.id()])
+                exp.addTerm(1, deliveryVars[k]);
+            for (int k : outboundArcs[node.id()])
+                exp.addTerm(-1, deliveryVars[k]);
+            cplex.addEq(exp, node.delivery(), name("expression04", node.id()));
         }
     }
 
     private void expression05() throws IloException {
         for (Node node : clientNodes) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            for (Link link : linkManager.getAllOutbound(node.id())) {
-                exp.addTerm(1, pickupVars.get(link));
-            }
-            for (Link link : linkManager.getAllInbound(node.id())) {
-                exp.addTerm(-1, pickupVars.get(link));
-            }
-
-            cplex.addEq(exp, node.pickup(), "expression05(" + node.id() + ")");
+            for (int k : outboundArcs[node.id()])
+                exp.addTerm(1, pickupVars[k]);
+            for (int k : inboundArcs[node.id()])
+                exp.addTerm(-1, pickupVars[k]);
+            cplex.addEq(exp, node.pickup(), name("expression05", node.id()));
         }
     }
 
     private void expression06() throws IloException {
-        for (Link link : linkManager.getAll()) {
+        for (int k = 0; k < numberOfArcs; k++) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-
-            exp.addTerm(1, deliveryVars.get(link));
-            exp.addTerm(1, pickupVars.get(link));
+            exp.addTerm(1, deliveryVars[k]);
+            exp.addTerm(1, pickupVars[k]);
             for (int t = 0; t < numberOfVeichles; t++) {
-                exp.addTerm(
-                        -(veichles.get(t).capacity()
-                                - Math.max(0,
-                                        Math.max(link.origin().delivery() - link.origin().pickup(),
-                                                link.destiny().pickup() - link.destiny().delivery()))),
-                        pathVars.get(link)[t]);
+                if (pathVarOfArc[t][k] != null)
+                    exp.addTerm(-loadUpperBound(k, veichles.get(t).capacity()), pathVarOfArc[t][k]);
             }
-            cplex.addLe(exp, 0, "expression06(" + link.origin().id() + "," + link.destiny().id() + ")");
+            cplex.addLe(exp, 0, name("expression06", arcs[k].origin().id(), arcs[k].destiny().id()));
         }
     }
 
     private void expression07() throws IloException {
-        for (Link link : linkManager.getAll()) {
+        for (int k = 0; k < numberOfArcs; k++) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            exp.addTerm(1, deliveryVars.get(link));
-            for (int t = 0; t < numberOfVeichles; t++) {
-                exp.addTerm(-link.destiny().delivery(), pathVars.get(link)[t]);
-            }
-            cplex.addGe(exp, 0, "expression07(" + link.origin().id() + "," + link.destiny().id() + ")");
+            exp.addTerm(1, deliveryVars[k]);
+            addPathTerms(exp, k, -arcs[k].destiny().delivery());
+            cplex.addGe(exp, 0, name("expression07", arcs[k].origin().id(), arcs[k].destiny().id()));
         }
     }
 
     private void expression08() throws IloException {
-        for (Link link : linkManager.getAll()) {
+        for (int k = 0; k < numberOfArcs; k++) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            exp.addTerm(1, pickupVars.get(link));
-            for (int t = 0; t < numberOfVeichles; t++) {
-                exp.addTerm(-link.origin().pickup(), pathVars.get(link)[t]);
-            }
-            cplex.addGe(exp, 0, "expression08(" + link.origin().id() + "," + link.destiny().id() + ")");
+            exp.addTerm(1, pickupVars[k]);
+            addPathTerms(exp, k, -arcs[k].origin().pickup());
+            cplex.addGe(exp, 0, name("expression08", arcs[k].origin().id(), arcs[k].destiny().id()));
         }
     }
 
     private void expression09() throws IloException {
-        for (Link link : linkManager.getAll()) {
+        for (int k = 0; k < numberOfArcs; k++) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            exp.addTerm(1, deliveryVars.get(link));
+            exp.addTerm(1, deliveryVars[k]);
             for (int t = 0; t < numberOfVeichles; t++) {
-                exp.addTerm(-(veichles.get(t).capacity() - link.origin().delivery()), pathVars.get(link)[t]);
+                if (pathVarOfArc[t][k] != null)
+                    exp.addTerm(-deliveryUpperBound(k, veichles.get(t).capacity()), pathVarOfArc[t][k]);
             }
-            cplex.addLe(exp, 0, "expression09(" + link.origin().id() + "," + link.destiny().id() + ")");
+            cplex.addLe(exp, 0, name("expression09", arcs[k].origin().id(), arcs[k].destiny().id()));
         }
     }
 
     private void expression10() throws IloException {
-        for (Link link : linkManager.getAll()) {
+        for (int k = 0; k < numberOfArcs; k++) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            exp.addTerm(1, pickupVars.get(link));
+            exp.addTerm(1, pickupVars[k]);
             for (int t = 0; t < numberOfVeichles; t++) {
-                exp.addTerm(-(veichles.get(t).capacity() - link.destiny().pickup()), pathVars.get(link)[t]);
+                if (pathVarOfArc[t][k] != null)
+                    exp.addTerm(-pickupUpperBound(k, veichles.get(t).capacity()), pathVarOfArc[t][k]);
             }
-            cplex.addLe(exp, 0, "expression10(" + link.origin().id() + "," + link.destiny().id() + ")");
+            cplex.addLe(exp, 0, name("expression10", arcs[k].origin().id(), arcs[k].destiny().id()));
         }
     }
 
     private void expression11() throws IloException {
         for (Node node : clientNodes) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            for (Link link : linkManager.getAllInbound(node.id())) {
-                exp.addTerm(1, deliveryVars.get(link));
-            }
-            cplex.addGe(exp, node.delivery(), "expression11(" + node.id() + ")");
+            for (int k : inboundArcs[node.id()])
+                exp.addTerm(1, deliveryVars[k]);
+            cplex.addGe(exp, node.delivery(), name("expression11", node.id()));
         }
     }
 
     private void expression12() throws IloException {
         for (Node node : clientNodes) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            for (Link link : linkManager.getAllOutbound(node.id())) {
-                exp.addTerm(1, pickupVars.get(link));
-            }
-            cplex.addGe(exp, node.pickup(), "expression12(" + node.id() + ")");
+            for (int k : outboundArcs[node.id()])
+                exp.addTerm(1, pickupVars[k]);
+            cplex.addGe(exp, node.pickup(), name("expression12", node.id()));
         }
     }
 
-    private void mipStart(List<Solution> solutionsIn) throws IloException {
-        List<Link> links = linkManager.getAll();
-        int numLinks = links.size();
-
-        IloNumVar[] allPathCplexVars = new IloNumVar[numLinks * numberOfVeichles];
-        IloNumVar[] allDeliveryCplexVars = new IloNumVar[numLinks];
-        IloNumVar[] allPickupCplexVars = new IloNumVar[numLinks];
-
-        Map<Link, Integer> linkIndexMap = new HashMap<>(numLinks);
+    private void addPathTerms(IloLinearNumExpr exp, int k, double coefficient) throws IloException {
+        for (int t = 0; t < numberOfVeichles; t++) {
+            if (pathVarOfArc[t][k] != null)
+                exp.addTerm(coefficient, pathVarOfArc[t][k]);
+        }
+    }
 
-        for (int index = 0; index < numLinks; index++) {
-            Link link = links.get(index);
-            for (int t = 0; t < numberOfVeichles; t++) {
-                allPathCplexVars[numLinks * t + index] = pathVars.get(link)[t];
-            }
-            allDeliveryCplexVars[index] = deliveryVars.get(link);
-            allPickupCplexVars[index] = pickupVars.get(link);
-            linkIndexMap.put(link, index);
+    private void mipStart(List<Solution> solutionsIn) throws IloException {
+        int[] typeOffset = new int[numberOfVeichles + 1];
+        for (int t = 0; t < numberOfVeichles; t++)
+            typeOffset[t + 1] = typeOffset[t] + typeArcs[t].length;
+        int pathCount = typeOffset[numberOfVeichles];
+
+        // Position of each arc within its type's variables
+        int[][] position = new int[numberOfVeichles][numberOfArcs];
+        IloNumVar[] allVars = new IloNumVar[pathCount + numberOfArcs * 2];
+        for (int t = 0; t < numberOfVeichles; t++) {
+            System.arraycopy(pathVars[t], 0, allVars, typeOffset[t], typeArcs[t].length);
+            for (int v = 0; v < typeArcs[t].length; v++)
+                position[t][typeArcs[t][v]] = v;
         }
+        System.arraycopy(deliveryVars, 0, allVars, pathCount, numberOfArcs);
+        System.arraycopy(pickupVars, 0, allVars, pathCount + numberOfArcs, numberOfArcs);
 
         int solNumber = 1;
         for (Solution solution : solutionsIn) {
-            double[] allPathCplexValues = new double[numLinks * numberOfVeichles];
-            double[] allDeliveryCplexValues = new double[numLinks];
-            double[] allPickupCplexValues = new double[numLinks];
+            if (!usesOnlyModelArcs(solution))
+                continue;
+
+            double[] allValues = new double[allVars.length];
 
             for (Route route : solution.routes) {
+                int t = veichles.indexOf(route.veichle);
                 for (int i = 0; i < route.links.size(); i++) {
-                    int index = linkIndexMap.get(route.links.get(i));
-                    allPathCplexValues[numLinks * (route.veichle.id() - 1) + index] = 1;
-                    allDeliveryCplexValues[index] = route.deliveryCourse.get(i);
-                    allPickupCplexValues[index] = route.pickupCourse.get(i);
+                    int k = arcIndexOf(route.links.get(i));
+                    allValues[typeOffset[t] + position[t][k]] = 1;
+                    allValues[pathCount + k] = route.deliveryCourse.get(i);
+                    allValues[pathCount + numberOfArcs + k] = route.pickupCourse.get(i);
                 }
             }
 
-            IloNumVar[] allVars = new IloNumVar[(numLinks * numberOfVeichles) + (numLinks * 2)];
-            System.arraycopy(allPathCplexVars, 0, allVars, 0, allPathCplexVars.length);
-            System.arraycopy(allDeliveryCplexVars, 0, allVars, allPathCplexVars.length, allDeliveryCplexVars.length);
-            System.arraycopy(allPickupCplexVars, 0, allVars, allPathCplexVars.length + allDeliveryCplexVars.length,
-                    allPickupCplexVars.length);
-
-            double[] allValues = new double[(numLinks * numberOfVeichles) + (numLinks * 2)];
-            System.arraycopy(allPathCplexValues, 0, allValues, 0, allPathCplexValues.length);
-            System.arraycopy(allDeliveryCplexValues, 0, allValues, allPathCplexValues.length,
-                    allDeliveryCplexValues.length);
-            System.arraycopy(allPickupCplexValues, 0, allValues,
-                    allPathCplexValues.length + allDeliveryCplexValues.length, allPickupCplexValues.length);
-
             cplex.addMIPStart(allVars, allValues, "MIPStart_" + solNumber);
             solNumber++;
         }
@@ -1,17 +1,20 @@
 package model.cplex.vrpspd;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import data.*;
 import ilog.concert.IloException;
+import ilog.concert.IloIntVar;
 import ilog.concert.IloNumVar;
 import model.cplex.CplexBaseModel;
 
 public abstract class VRPSPDBaseModel extends CplexBaseModel {
 
+    // Variable and constraint names are only emitted when debugging exported models
+    protected static final boolean DEBUG_NAMES = false;
+
     protected LinkManager linkManager;
 
     protected Instance instance;
@@ -22,11 +25,26 @@ public abstract class VRPSPDBaseModel extends CplexBaseModel {
 
     protected double totalDelivery;
     protected double totalPickup;
+    protected double maxCapacity;
+
+    // Arcs of the model, indexed 0..numberOfArcs-1 in arc id order
+    protected int numberOfArcs;
+    protected Link[] arcs;
+    protected int[] arcIndex;
+    protected int[][] outboundArcs;
+    protected int[][] inboundArcs;
+    // Smallest vehicle capacity under which arc k can be part of a feasible route
+    protected double[] requiredCapacity;
+
+    protected IloNumVar[] deliveryVars;
+    protected IloNumVar[] pickupVars;
+
+    private Node[] successors;
 
-    protected Map<Link, IloNumVar> deliveryVars = new HashMap<>();
-    protected Map<Link, IloNumVar> pickupVars = new HashMap<>();
+    private ArcSet allowedArcs;
+    private ArcSet fixedArcs;
 
-    protected VRPSPDBaseModel(Instance instance, Set<Link> links, double timeLimit) throws IloException {
+    protected VRPSPDBaseModel(Instance instance, int[] arcIds, double timeLimit) throws IloException {
         super(timeLimit);
 
         this.instance = instance;
@@ -37,8 +55,220 @@ public abstract class VRPSPDBaseModel extends CplexBaseModel {
 
         this.totalDelivery = instance.totalDelivery();
         this.totalPickup = instance.totalPickup();
+        this.maxCapacity = instance.veichles().stream().mapToDouble(Veichle::capacity).max().orElse(0.0);
+
+        this.linkManager = new LinkManager(instance.linkManager(), arcIds);
+
+        indexArcs(usableArcIds(linkManager.getAllArcIds()));
+    }
+
+    /**
+     * Drops the arcs no vehicle can travel: arcs whose required capacity
+     * exceeds the largest vehicle.
+     */
+    private int[] usableArcIds(int[] sortedArcIds) {
+        return Arrays.stream(sortedArcIds)
+                .filter(arcId -> requiredCapacity(linkManager.get(arcId)) <= maxCapacity)
+                .toArray();
+    }
+
+    /**
+     * Lower bound on the largest load of a route travelling link (i,j): the
+     * load on the link carries at least d_j and p_i, the load into i at least
+     * d_i + d_j and the load out of j at least p_i + p_j.
+     */
+    private static double requiredCapacity(Link link) {
+        Node origin = link.origin();
+        Node destiny = link.destiny();
+        return Math.max(destiny.delivery() + origin.pickup(),
+                Math.max(origin.delivery() + destiny.delivery(), origin.pickup() + destiny.pickup()));
+    }
+
+    /**
+     * Numbers the model arcs and builds per-node adjacency over those numbers,
+     * so variables and constraints can be addressed by plain array indices.
+     */
+    private void indexArcs(int[] sortedArcIds) {
+        numberOfArcs = sortedArcIds.length;
+        arcs = new Link[numberOfArcs];
+        arcIndex = new int[numberOfNodes * numberOfNodes];
+        Arrays.fill(arcIndex, -1);
+
+        requiredCapacity = new double[numberOfArcs];
+
+        int[] outboundCount = new int[numberOfNodes];
+        int[] inboundCount = new int[numberOfNodes];
+        for (int k = 0; k < numberOfArcs; k++) {
+            arcs[k] = linkManager.get(sortedArcIds[k]);
+            arcIndex[sortedArcIds[k]] = k;
+            requiredCapacity[k] = requiredCapacity(arcs[k]);
+            outboundCount[arcs[k].origin().id()]++;
+            inboundCount[arcs[k].destiny().id()]++;
+        }
+
+        outboundArcs = new int[numberOfNodes][];
+        inboundArcs = new int[numberOfNodes][];
+        for (int i = 0; i < numberOfNodes; i++) {
+            outboundArcs[i] = new int[outboundCount[i]];
+            inboundArcs[i] = new int[inboundCount[i]];
+            outboundCount[i] = 0;
+            inboundCount[i] = 0;
+        }
+        for (int k = 0; k < numberOfArcs; k++) {
+            int originId = arcs[k].origin().id();
+            int destinyId = arcs[k].destiny().id();
+            outboundArcs[originId][outboundCount[originId]++] = k;
+            inboundArcs[destinyId][inboundCount[destinyId]++] = k;
+        }
+    }
+
+    protected int arcIndexOf(Link link) {
+        return arcIndex[linkManager.arcId(link.origin().id(), link.destiny().id())];
+    }
+
+    protected IloIntVar[] createPathVars(String prefix) throws IloException {
+        if (!DEBUG_NAMES)
+            return cplex.boolVarArray(numberOfArcs);
+        return cplex.boolVarArray(numberOfArcs, arcNames(prefix));
+    }
+
+    protected IloNumVar[] createDeliveryVars(double capacity) throws IloException {
+        double[] upperBounds = new double[numberOfArcs];
+        for (int k = 0; k < numberOfArcs; k++)
+            upperBounds[k] = deliveryUpperBound(k, capacity);
+        return createLoadVars("delivery", upperBounds);
+    }
+
+    protected IloNumVar[] createPickupVars(double capacity) throws IloException {
+        double[] upperBounds = new double[numberOfArcs];
+        for (int k = 0; k < numberOfArcs; k++)
+            upperBounds[k] = pickupUpperBound(k, capacity);
+        return createLoadVars("pickup", upperBounds);
+    }
+
+    private IloNumVar[] createLoadVars(String prefix, double[] upperBounds) throws IloException {
+        double[] lowerBounds = new double[numberOfArcs];
+        if (!DEBUG_NAMES)
+            return cplex.numVarArray(numberOfArcs, lowerBounds, upperBounds);
+        return cplex.numVarArray(numberOfArcs, lowerBounds, upperBounds, arcNames(prefix));
+    }
 
-        this.linkManager = new LinkManager(numberOfNodes, links);
+    /**
+     * Largest total load on arc k of a vehicle with the given capacity: the
+     * load into i and out of j must also fit.
+     */
+    protected double loadUpperBound(int k, double capacity) {
+        Node origin = arcs[k].origin();
+        Node destiny = arcs[k].destiny();
+        return capacity - Math.max(0,
+                Math.max(origin.delivery() - origin.pickup(), destiny.pickup() - destiny.delivery()));
     }
 
+    /**
+     * Largest delivery load on arc k: the load bound less the pickup p_i
+     * already on board, and never more than what is left after i.
+     */
+    protected double deliveryUpperBound(int k, double capacity) {
+        Node origin = arcs[k].origin();
+        return Math.max(0, Math.min(loadUpperBound(k, capacity) - origin.pickup(), totalDelivery - origin.delivery()));
+    }
+
+    /**
+     * Largest pickup load on arc k: the load bound less the delivery d_j still
+     * on board, and never more than what is collected before j.
+     */
+    protected double pickupUpperBound(int k, double capacity) {
+        Node destiny = arcs[k].destiny();
+        return Math.max(0, Math.min(loadUpperBound(k, capacity) - destiny.delivery(), totalPickup - destiny.pickup()));
+    }
+
+    private String[] arcNames(String prefix) {
+        String[] names = new String[numberOfArcs];
+        for (int k = 0; k < numberOfArcs; k++)
+            names[k] = prefix + "(" + arcs[k].origin().id() + "," + arcs[k].destiny().id() + ")";
+        return names;
+    }
+
+    protected static String name(String prefix) {
+        return DEBUG_NAMES ? prefix : null;
+    }
+
+    protected static String name(String prefix, int i) {
+        return DEBUG_NAMES ? prefix + "(" + i + ")" : null;
+    }
+
+    protected static String name(String prefix, int i, int j) {
+        return DEBUG_NAMES ? prefix + "(" + i + "," + j + ")" : null;
+    }
+
+    /**
+     * Decodes routes from path variable values, one value array per vehicle
+     * type, by recording each client's successor and walking from every arc
+     * leaving the depot.
+     */
+    protected List<Route> decodeRoutes(double[]... pathValues) {
+        if (successors == null)
+            successors = new Node[numberOfNodes];
+
+        List<Route> routes = new ArrayList<>();
+        for (double[] values : pathValues) {
+            for (int k = 0; k < numberOfArcs; k++) {
+                if (values[k] > 0.5 && arcs[k].origin() != depotNode)
+                    successors[arcs[k].origin().id()] = arcs[k].destiny();
+            }
+
+            for (int k0 : outboundArcs[depotNode.id()]) {
+                if (values[k0] <= 0.5)
+                    continue;
+                List<Node> nodes = new ArrayList<>();
+                for (Node node = arcs[k0].destiny(); node != depotNode; node = successors[node.id()])
+                    nodes.add(node);
+                routes.add(new Route(nodes, instance));
+            }
+        }
+        return routes;
+    }
+
+    protected boolean usesOnlyModelArcs(Solution solution) {
+        for (Route route : solution.routes) {
+            for (Link link : route.links) {
+                if (arcIndexOf(link) < 0)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void restrictArcs(int[] arcIds, int[] fixedArcIds) throws IloException {
+        double restrictStartTime = System.currentTimeMillis();
+        if (!modelBuilt)
+            buildModel();
+
+        if (allowedArcs == null) {
+            allowedArcs = new ArcSet(numberOfNodes);
+            fixedArcs = new ArcSet(numberOfNodes);
+        }
+        allowedArcs.clear();
+        fixedArcs.clear();
+        for (int arcId : arcIds)
+            allowedArcs.add(arcId / numberOfNodes, arcId % numberOfNodes);
+        for (int arcId : fixedArcIds)
+            fixedArcs.add(arcId / numberOfNodes, arcId % numberOfNodes);
+
+        for (int k = 0; k < numberOfArcs; k++) {
+            int originId = arcs[k].origin().id();
+            int destinyId = arcs[k].destiny().id();
+            setArcBounds(k, fixedArcs.contains(originId, destinyId) ? 1 : 0,
+                    allowedArcs.contains(originId, destinyId) ? 1 : 0);
+        }
+
+        if (cplex.getNMIPStarts() > 0)
+            cplex.deleteMIPStarts(0, cplex.getNMIPStarts());
+
+        modelCreationTime = (System.currentTimeMillis() - restrictStartTime) / 1000;
+    }
+
+    protected abstract void setArcBounds(int k, double lowerBound, double upperBound) throws IloException;
+
 }
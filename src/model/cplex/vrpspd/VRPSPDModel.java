@@ -1,15 +1,11 @@
 package model.cplex.vrpspd;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import data.*;
 import ilog.concert.IloException;
 import ilog.concert.IloIntVar;
-import ilog.concert.IloLinearIntExpr;
 import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloNumVar;
 import model.ModelFactory;
@@ -24,9 +20,9 @@ public class VRPSPDModel extends VRPSPDBaseModel {
             }
 
             @Override
-            public model.cplex.CplexBaseModel create(Instance instance, Set<Link> links, double timeLimit)
+            public model.cplex.CplexBaseModel create(Instance instance, int[] arcIds, double timeLimit)
                     throws IloException {
-                return new VRPSPDModel(instance, links, timeLimit);
+                return new VRPSPDModel(instance, arcIds, timeLimit);
             }
         };
     }
@@ -39,34 +35,31 @@ public class VRPSPDModel extends VRPSPDBaseModel {
 
     protected Veichle veichle;
 
-    protected Map<Link, IloIntVar> pathVars = new HashMap<>();
+    protected IloIntVar[] pathVars;
 
-    public VRPSPDModel(Instance instance, Set<Link> links, double timeLimit) throws IloException {
-        super(instance, links, timeLimit);
+    public VRPSPDModel(Instance instance, int[] arcIds, double timeLimit) throws IloException {
+        super(instance, arcIds, timeLimit);
 
         this.veichle = instance.veichles().getFirst();
     }
 
     @Override
     protected void createVariables() throws IloException {
-        for (Link link : linkManager.getAll()) {
-            pathVars.put(link, cplex.boolVar(
-                    "path" + "(" + link.origin().id() + "," + link.destiny().id() + ")"));
-            deliveryVars.put(link, cplex.numVar(0.0, veichle.capacity(),
-                    "delivery" + "(" + link.origin().id() + "," + link.destiny().id() + ")"));
-            pickupVars.put(link, cplex.numVar(0.0, veichle.capacity(),
-                    "pickup" + "(" + link.origin().id() + "," + link.destiny().id() + ")"));
-        }
+        pathVars = createPathVars("path");
+        deliveryVars = createDeliveryVars(veichle.capacity());
+        pickupVars = createPickupVars(veichle.capacity());
     }
 
     @Override
     protected void buildObjective() throws IloException {
-        IloLinearNumExpr minExp = cplex.linearNumExpr();
+        double[] distances = new double[numberOfArcs];
+        for (int k = 0; k < numberOfArcs; k++)
+            distances[k] = arcs[k].distance();
 
-        for (Link link : linkManager.getAll())
-            minExp.addTerm(link.distance(), pathVars.get(link));
+        IloLinearNumExpr minExp = cplex.linearNumExpr();
+        minExp.addTerms(distances, pathVars);
 
-        cplex.addMinimize(minExp, "expression01");
+        cplex.addMinimize(minExp, name("expression01"));
     }
 
     @Override
@@ -86,70 +79,37 @@ public class VRPSPDModel extends VRPSPDBaseModel {
         expression14();
     }
 
-    protected List<Solution> buildSolution(String log) throws IloException {
-        List<Solution> solutionsOut = new ArrayList<>();
-
-        for (int sol = 0; sol < cplex.getSolnPoolNsolns(); sol++) {
-            List<Route> routes = new ArrayList<>();
-
-            for (Link link0 : linkManager.getAllOutbound(0)) {
-                if (cplex.getValue(pathVars.get(link0), sol) > 0.9999) {
-                    List<Node> nodes = new ArrayList<>();
-                    int destination = link0.destiny().id();
-                    while (destination != 0) {
-                        for (Link link : linkManager.getAllOutbound(destination)) {
-                            if (cplex.getValue(pathVars.get(link), sol) > 0.9999) {
-                                nodes.add(link.origin());
-                                destination = link.destiny().id();
-                                break;
-                            }
-                        }
-                    }
-                    routes.add(new Route(nodes, instance));
-                }
-            }
-
-            solutionsOut.add(new Solution(
-                    routes,
-                    cplex.getBestObjValue(),
-                    Math.abs(cplex.getObjValue() - cplex.getBestObjValue())
-                            / ((1E-10) + Math.abs(cplex.getObjValue())),
-                    cplex.getStatus().toString(),
-                    modelCreationTime,
-                    modelSolvingTime,
-                    log));
-        }
-        return solutionsOut;
+    @Override
+    protected Solution decodeSolution(int index, String log) throws IloException {
+        return newSolution(decodeRoutes(cplex.getValues(pathVars, index)), log);
     }
 
-    public void warmStart(List<Solution> solutionsIn) throws IloException {
-        if (solutionsIn.isEmpty())
-            return;
-
-        List<Link> links = linkManager.getAll();
-        int numLinks = links.size();
-
-        IloNumVar[] allVars = new IloNumVar[numLinks * 3];
-        Map<Link, Integer> linkIndexMap = new HashMap<>(numLinks);
+    @Override
+    protected void setArcBounds(int k, double lowerBound, double upperBound) throws IloException {
+        pathVars[k].setLB(lowerBound);
+        pathVars[k].setUB(upperBound);
+    }
 
-        for (int index = 0; index < numLinks; index++) {
-            Link link = links.get(index);
-            allVars[index] = pathVars.get(link);
-            allVars[numLinks + index] = pickupVars.get(link);
-            allVars[numLinks * 2 + index] = deliveryVars.get(link);
-            linkIndexMap.put(link, index);
-        }
+    @Override
+    protected void addMIPStarts(List<Solution> solutionsIn) throws IloException {
+        IloNumVar[] allVars = new IloNumVar[numberOfArcs * 3];
+        System.arraycopy(pathVars, 0, allVars, 0, numberOfArcs);
+        System.arraycopy(pickupVars, 0, allVars, numberOfArcs, numberOfArcs);
+        System.arraycopy(deliveryVars, 0, allVars, numberOfArcs * 2, numberOfArcs);
 
         int solNumber = 1;
         for (Solution solution : solutionsIn) {
-            double[] allValues = new double[numLinks * 3];
+            if (!usesOnlyModelArcs(solution))
+                continue;
+
+            double[] allValues = new double[numberOfArcs * 3];
 
             for (Route route : solution.routes) {
                 for (int i = 0; i < route.links.size(); i++) {
-                    int index = linkIndexMap.get(route.links.get(i));
-                    allValues[index] = 1;
-                    allValues[numLinks + index] = route.pickupCourse.get(i);
-                    allValues[numLinks * 2 + index] = route.deliveryCourse.get(i);
+                    int k = arcIndexOf(route.links.get(i));
+                    allValues[k] = 1;
+                    allValues[numberOfArcs + k] = route.pickupCourse.get(i);
+                    allValues[numberOfArcs * 2 + k] = route.deliveryCourse.get(i);
                 }
             }
 
@@ -160,119 +120,111 @@ public class VRPSPDModel extends VRPSPDBaseModel {
 
     private void expression02() throws IloException {
         for (Node nodeI : clientNodes) {
-            IloLinearIntExpr exp = cplex.linearIntExpr();
-            for (Link link : linkManager.getAllInbound(nodeI.id())) {
-                exp.addTerm(1, pathVars.get(link));
-            }
-            cplex.addEq(exp, 1, "expression02(" + nodeI.id() + ")");
+            IloLinearNumExpr exp = cplex.linearNumExpr();
+            for (int k : inboundArcs[nodeI.id()])
+                exp.addTerm(1, pathVars[k]);
+            cplex.addEq(exp, 1, name("expression02", nodeI.id()));
         }
     }
 
     private void expression03() throws IloException {
         for (Node nodeI : clientNodes) {
-            IloLinearIntExpr exp = cplex.linearIntExpr();
-            for (Link link : linkManager.getAllOutbound(nodeI.id())) {
-                exp.addTerm(1, pathVars.get(link));
-            }
-            cplex.addEq(exp, 1, "expression03(" + nodeI.id() + ")");
+            IloLinearNumExpr exp = cplex.linearNumExpr();
+            for (int k : outboundArcs[nodeI.id()])
+                exp.addTerm(1, pathVars[k]);
+            cplex.addEq(exp, 1, name("expression03", nodeI.id()));
         }
     }
 
     private void expression04() throws IloException {
-        for (Link link : linkManager.getAll()) {
-            IloLinearNumExpr expLeft = cplex.linearNumExpr();
+        for (int k = 0; k < numberOfArcs; k++) {
+            Node nodeI = arcs[k].origin();
+            Node nodeJ = arcs[k].destiny();
+            double M4_ij = loadUpperBound(k, veichle.capacity());
 
-            expLeft.addTerm(1, deliveryVars.get(link));
-            expLeft.addTerm(1, pickupVars.get(link));
-
-            Node nodeI = link.origin();
-            Node nodeJ = link.destiny();
-            double M4_ij = veichle.capacity()
-                    - Math.max(0, Math.max(nodeI.delivery() - nodeI.pickup(), nodeJ.pickup() - nodeJ.delivery()));
-
-            IloLinearNumExpr expRight = cplex.linearNumExpr();
-            expRight.addTerm(M4_ij, pathVars.get(link));
+            IloLinearNumExpr exp = cplex.linearNumExpr();
+            exp.addTerm(1, deliveryVars[k]);
+            exp.addTerm(1, pickupVars[k]);
+            exp.addTerm(-M4_ij, pathVars[k]);
 
-            cplex.addLe(expLeft, expRight, "expression04(" + nodeI.id() + "-" + nodeJ.id() + ")");
+            cplex.addLe(exp, 0, name("expression04", nodeI.id(), nodeJ.id()));
         }
     }
 
     private void expression05() throws IloException {
         IloLinearNumExpr exp = cplex.linearNumExpr();
-        for (Link link : linkManager.getAllOutbound(depotNode.id())) {
-            exp.addTerm(1, deliveryVars.get(link));
-        }
-        cplex.addEq(exp, totalDelivery, "expression05");
+        for (int k : outboundArcs[depotNode.id()])
+            exp.addTerm(1, deliveryVars[k]);
+        cplex.addEq(exp, totalDelivery, name("expression05"));
     }
 
     private void expression06() throws IloException {
         IloLinearNumExpr exp = cplex.linearNumExpr();
-        for (Link link : linkManager.getAllInbound(depotNode.id())) {
-            exp.addTerm(1, deliveryVars.get(link));
-        }
-        cplex.addEq(exp, 0, "expression06");
+        for (int k : inboundArcs[depotNode.id()])
+            exp.addTerm(1, deliveryVars[k]);
+        cplex.addEq(exp, 0, name("expression06"));
     }
 
     private void expression07() throws IloException {
         IloLinearNumExpr exp = cplex.linearNumExpr();
-        for (Link link : linkManager.getAllInbound(depotNode.id())) {
-            exp.addTerm(1, pickupVars.get(link));
-        }
-        cplex.addEq(exp, totalPickup, "expression07");
+        for (int k : inboundArcs[depotNode.id()])
+            exp.addTerm(1, pickupVars[k]);
+        cplex.addEq(exp, totalPickup, name("expression07"));
     }
 
     private void expression08() throws IloException {
         IloLinearNumExpr exp = cplex.linearNumExpr();
-        for (Link link : linkManager.getAllOutbound(depotNode.id())) {
-            exp.addTerm(1, pickupVars.get(link));
-        }
-        cplex.addEq(0, exp, "expression08");
+        for (int k : outboundArcs[depotNode.id()])
+            exp.addTerm(1, pickupVars[k]);
+        cplex.addEq(exp, 0, name("expression08"));
     }
 
     private void expression09() throws IloException {
         for (Node nodeI : clientNodes) {
-            for (Link link : linkManager.getAllOutbound(nodeI.id())) {
+            for (int k : outboundArcs[nodeI.id()]) {
                 IloLinearNumExpr exp = cplex.linearNumExpr();
-                exp.addTerm(veichle.capacity() - link.origin().delivery(), pathVars.get(link));
-                cplex.addLe(deliveryVars.get(link), exp,
-                        "expression09(" + link.origin().id() + "-" + link.destiny().id() + ")");
+                exp.addTerm(1, deliveryVars[k]);
+                exp.addTerm(-deliveryUpperBound(k, veichle.capacity()), pathVars[k]);
+                cplex.addLe(exp, 0, name("expression09", nodeI.id(), arcs[k].destiny().id()));
             }
         }
     }
 
     private void expression10() throws IloException {
         for (Node nodeI : clientNodes) {
-            for (Link link : linkManager.getAllOutbound(nodeI.id())) {
-                if (link.destiny() == depotNode)
+            for (int k : outboundArcs[nodeI.id()]) {
+                Node nodeJ = arcs[k].destiny();
+                if (nodeJ == depotNode)
                     continue;
                 IloLinearNumExpr exp = cplex.linearNumExpr();
-                exp.addTerm(veichle.capacity() - link.destiny().pickup(), pathVars.get(link));
-                cplex.addLe(pickupVars.get(link), exp,
-                        "expression10(" + link.origin().id() + "-" + link.destiny().id() + ")");
+                exp.addTerm(1, pickupVars[k]);
+                exp.addTerm(-pickupUpperBound(k, veichle.capacity()), pathVars[k]);
+                cplex.addLe(exp, 0, name("expression10", nodeI.id(), nodeJ.id()));
             }
         }
     }
 
     private void expression11() throws IloException {
         for (Node nodeI : clientNodes) {
-            for (Link link : linkManager.getAllOutbound(nodeI.id())) {
-                if (link.destiny() == depotNode)
+            for (int k : outboundArcs[nodeI.id()]) {
+                Node nodeJ = arcs[k].destiny();
+                if (nodeJ == depotNode)
                     continue;
                 IloLinearNumExpr exp = cplex.linearNumExpr();
-                exp.addTerm(link.destiny().delivery(), pathVars.get(link));
-                cplex.addGe(deliveryVars.get(link), exp,
-                        "expression11(" + link.origin().id() + "-" + link.destiny().id() + ")");
+                exp.addTerm(1, deliveryVars[k]);
+                exp.addTerm(-nodeJ.delivery(), pathVars[k]);
+                cplex.addGe(exp, 0, name("expression11", nodeI.id(), nodeJ.id()));
             }
         }
     }
 
     private void expression12() throws IloException {
         for (Node nodeI : clientNodes) {
-            for (Link link : linkManager.getAllOutbound(nodeI.id())) {
+            for (int k : outboundArcs[nodeI.id()]) {
                 IloLinearNumExpr exp = cplex.linearNumExpr();
-                exp.addTerm(link.origin().pickup(), pathVars.get(link));
-                cplex.addGe(pickupVars.get(link), exp,
-                        "expression12(" + link.origin().id() + "-" + link.destiny().id() + ")");
+                exp.addTerm(1, pickupVars[k]);
+                exp.addTerm(-nodeI.pickup(), pathVars[k]);
+                cplex.addGe(exp, 0, name("expression12", nodeI.id(), arcs[k].destiny().id()));
             }
         }
     }
@@ -280,26 +232,22 @@ public class VRPSPDModel extends VRPSPDBaseModel {
     private void expression13() throws IloException {
         for (Node nodeJ : clientNodes) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            for (Link linkIJ : linkManager.getAllInbound(nodeJ.id())) {
-                exp.addTerm(-1, pickupVars.get(linkIJ));
-            }
-            for (Link linkJI : linkManager.getAllOutbound(nodeJ.id())) {
-                exp.addTerm(1, pickupVars.get(linkJI));
-            }
-            cplex.addEq(exp, nodeJ.pickup(), "expression13(" + nodeJ.id() + ")");
+            for (int k : inboundArcs[nodeJ.id()])
+                exp.addTerm(-1, pickupVars[k]);
+            for (int k : outboundArcs[nodeJ.id()])
+                exp.addTerm(1, pickupVars[k]);
+            cplex.addEq(exp, nodeJ.pickup(), name("expression13", nodeJ.id()));
         }
     }
 
     private void expression14() throws IloException {
         for (Node nodeJ : clientNodes) {
             IloLinearNumExpr exp = cplex.linearNumExpr();
-            for (Link linkIJ : linkManager.getAllInbound(nodeJ.id())) {
-                exp.addTerm(1, deliveryVars.get(linkIJ));
-            }
-            for (Link linkJI : linkManager.getAllOutbound(nodeJ.id())) {
-                exp.addTerm(-1, deliveryVars.get(linkJI));
-            }
-            cplex.addEq(exp, nodeJ.delivery(), "expression14(" + nodeJ.id() + ")");
+            for (int k : inboundArcs[nodeJ.id()])
+                exp.addTerm(1, deliveryVars[k]);
+            for (int k : outboundArcs[nodeJ.id()])
+                exp.addTerm(-1, deliveryVars[k]);
+            cplex.addEq(exp, nodeJ.delivery(), name("expression14", nodeJ.id()));
         }
     }
 